@@ -0,0 +1,169 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// 使い捨てワールドの判断材料：チャンクを種から再生成するのと、保存済みのチャンクを読み込むのとの比較（1回 = 1チャンク）
+// 読み込み側は Anvil と同じ形（セクションごとのパレットと詰めたインデックスを zlib で圧縮）でファイルに書いたものを読んで展開する
+// サーバーの NBT の解析や光の再計算はどちらにも含まない。ファイルは OS のキャッシュに載った状態で読む
+// どちらも空のチャンクから始める（サーバーも毎回新しいチャンクを用意する）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkSourceBenchmark {
+
+    private static final int CHUNKS = 64; // 8×8 チャンクを順に使う
+    private static final int MIN_HEIGHT = -64;
+    private static final int MAX_HEIGHT = 320;
+    private static final Material[] MATERIALS = Material.values();
+
+    @Param({"0", "1", "2"})
+    public int level;
+
+    private BackroomGenerator generator;
+    private MemoryChunkData chunkData;
+    private Random random;
+    private Path folder;
+    private Path[] files;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        generator = new BackroomGenerator(new LayoutOracle(Stubs.levelConfig(level)), new LightIndex(), Metrics.DISABLED);
+        chunkData = new MemoryChunkData(MIN_HEIGHT, MAX_HEIGHT);
+        random = new Random(0);
+
+        // 同じチャンクを生成してファイルに保存しておく
+        folder = Files.createTempDirectory("backroom-chunks");
+        files = new Path[CHUNKS];
+        for (int i = 0; i < CHUNKS; i++) {
+            MemoryChunkData generated = new MemoryChunkData(MIN_HEIGHT, MAX_HEIGHT);
+            generator.generateNoise(null, random, chunkX(i), chunkZ(i), generated);
+            files[i] = folder.resolve("c." + chunkX(i) + "." + chunkZ(i) + ".bin");
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(files[i]))))) {
+                write(generated, out);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static int chunkX(int i) {
+        return (i & 7) - 4;
+    }
+
+    private static int chunkZ(int i) {
+        return (i >> 3) - 4;
+    }
+
+    @Benchmark
+    public MemoryChunkData regenerate() {
+        int i = next++ & (CHUNKS - 1);
+        chunkData.clear();
+        generator.generateNoise(null, random, chunkX(i), chunkZ(i), chunkData);
+        return chunkData;
+    }
+
+    @Benchmark
+    public MemoryChunkData load() throws IOException {
+        int i = next++ & (CHUNKS - 1);
+        chunkData.clear();
+        byte[] compressed = Files.readAllBytes(files[i]);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compressed))))) {
+            read(in, chunkData);
+        }
+        return chunkData;
+    }
+
+    // セクション（16段）ごとに、パレットと、パレット番号を long に詰めた配列を書く（長さの境界をまたがない）
+    private static void write(MemoryChunkData chunk, DataOutputStream out) throws IOException {
+        int[] indices = new int[4096];
+        for (int sectionY = MIN_HEIGHT; sectionY < MAX_HEIGHT; sectionY += 16) {
+            List<Material> palette = new ArrayList<>();
+            for (int i = 0; i < 4096; i++) {
+                Material material = chunk.getType(i & 15, sectionY + (i >> 8), (i >> 4) & 15);
+                int index = palette.indexOf(material);
+                if (index < 0) {
+                    index = palette.size();
+                    palette.add(material);
+                }
+                indices[i] = index;
+            }
+
+            out.writeShort(palette.size());
+            for (Material material : palette) {
+                out.writeShort(material.ordinal());
+            }
+            if (palette.size() == 1) {
+                continue; // 1種類だけのセクションはパレットのみ
+            }
+            int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(palette.size() - 1));
+            int perLong = 64 / bits;
+            long[] packed = new long[(4096 + perLong - 1) / perLong];
+            for (int i = 0; i < 4096; i++) {
+                packed[i / perLong] |= (long) indices[i] << ((i % perLong) * bits);
+            }
+            for (long value : packed) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    private static void read(DataInputStream in, MemoryChunkData chunk) throws IOException {
+        Material[] palette = new Material[4096];
+        for (int sectionY = MIN_HEIGHT; sectionY < MAX_HEIGHT; sectionY += 16) {
+            int size = in.readUnsignedShort();
+            for (int p = 0; p < size; p++) {
+                palette[p] = MATERIALS[in.readUnsignedShort()];
+            }
+            if (size == 1) {
+                chunk.setRegion(0, sectionY, 0, 16, sectionY + 16, 16, palette[0]);
+                continue;
+            }
+            int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(size - 1));
+            int perLong = 64 / bits;
+            long mask = (1L << bits) - 1;
+            int i = 0;
+            while (i < 4096) {
+                long value = in.readLong();
+                for (int k = 0; k < perLong && i < 4096; k++, i++) {
+                    chunk.setBlock(i & 15, sectionY + (i >> 8), (i >> 4) & 15,
+                            palette[(int) ((value >>> (k * bits)) & mask)]);
+                }
+            }
+        }
+    }
+}
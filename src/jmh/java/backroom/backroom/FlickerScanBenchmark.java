@@ -0,0 +1,64 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 点滅するセルの照明集め（FlickerEngine.lightsInCell 1回 = セル1つ）
+// 照明インデックスは周囲のチャンクを実際に生成して埋める（生成時に記録され、読み込みで登録された状態と同じ）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlickerScanBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int level;
+
+    private World world;
+    private BackroomLevel backroomLevel;
+    private long cell;
+
+    @Setup
+    public void setup() {
+        Stubs.installServer();
+        backroomLevel = new BackroomLevel(Stubs.levelConfig(level), Collections.emptyList());
+        Material lightMaterial = backroomLevel.config.lightMaterial;
+        Block light = Stubs.stub(Block.class, Map.of("getType", args -> lightMaterial));
+        world = Stubs.stub(World.class, Map.of(
+                "getBlockAt", args -> light,
+                "isChunkLoaded", args -> true));
+        backroomLevel.world = world;
+
+        // セル (0, 0) とその周囲 RANGE ブロックを覆うチャンクを生成して照明を記録
+        cell = FlickerEngine.cellKey(0, 0);
+        BackroomGenerator generator = new BackroomGenerator(backroomLevel.oracle, backroomLevel.lightIndex, Metrics.DISABLED);
+        MemoryChunkData chunkData = new MemoryChunkData(-64, 320);
+        int min = -FlickerEngine.RANGE >> 4;
+        int max = ((1 << FlickerEngine.CELL_SHIFT) + FlickerEngine.RANGE - 1) >> 4;
+        for (int chunkX = min; chunkX <= max; chunkX++) {
+            for (int chunkZ = min; chunkZ <= max; chunkZ++) {
+                generator.generateNoise(null, new Random(0), chunkX, chunkZ, chunkData);
+                backroomLevel.lightIndex.load(chunkX, chunkZ); // 読み込みイベントと同じ
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Block> lightsInCell() {
+        return FlickerEngine.lightsInCell(world, backroomLevel, cell);
+    }
+}
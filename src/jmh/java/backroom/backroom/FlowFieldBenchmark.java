@@ -0,0 +1,85 @@
+package backroom.backroom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// 徘徊者の経路探索
+// buildWarm / buildCold: 流れ場1つの作成（非同期スレッド）。cold は歩ける列の表も作り直す（目標が初めての場所に動いたとき）
+// steer: 流れ場から次の列を引く1回（エンティティのティックで1体あたり1回）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlowFieldBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int level;
+
+    private BackroomLevel backroomLevel;
+    private int targetX;
+    private int targetZ;
+    private FlowField field;
+    private int[] stalkerX;
+    private int[] stalkerZ;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Stubs.installServer();
+        backroomLevel = new BackroomLevel(Stubs.levelConfig(level), Collections.emptyList());
+
+        // 原点の近くの歩ける列を目標にする
+        LayoutOracle oracle = backroomLevel.oracle;
+        targetX = 1;
+        targetZ = 1;
+        while (!oracle.isStandable(targetX, targetZ)) {
+            targetX++;
+        }
+        field = FlowField.build(backroomLevel.walkGrid, targetX, targetZ);
+
+        // 目標にたどり着ける列を徘徊者の位置として集める
+        int count = 0;
+        int[] xs = new int[FlowField.SIZE * FlowField.SIZE];
+        int[] zs = new int[FlowField.SIZE * FlowField.SIZE];
+        for (int x = field.originX; x < field.originX + FlowField.SIZE; x++) {
+            for (int z = field.originZ; z < field.originZ + FlowField.SIZE; z++) {
+                if (field.distanceAt(x, z) != FlowField.UNREACHABLE) {
+                    xs[count] = x;
+                    zs[count] = z;
+                    count++;
+                }
+            }
+        }
+        if (count < 2) {
+            throw new IllegalStateException("目標にたどり着ける列がありません");
+        }
+        stalkerX = Arrays.copyOf(xs, count);
+        stalkerZ = Arrays.copyOf(zs, count);
+    }
+
+    @Benchmark
+    public FlowField buildWarm() {
+        return FlowField.build(backroomLevel.walkGrid, targetX, targetZ);
+    }
+
+    @Benchmark
+    public FlowField buildCold() {
+        return FlowField.build(new WalkGrid(backroomLevel.oracle), targetX, targetZ);
+    }
+
+    @Benchmark
+    public int steer() {
+        int i = next;
+        next = i + 1 == stalkerX.length ? 0 : i + 1;
+        return field.nextStep(stalkerX[i], stalkerZ[i]);
+    }
+}
@@ -0,0 +1,54 @@
+package backroom.backroom;
+
+import org.bukkit.World;
+import org.bukkit.generator.WorldInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// レベルごとのチャンク生成（generateNoise 1回 = 1チャンク）
+// 32×32 チャンクの範囲を順に生成し、同じチャンクの繰り返しで分岐予測が効きすぎないようにする
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeneratorBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int level;
+
+    private BackroomGenerator generator;
+    private MemoryChunkData chunkData;
+    private WorldInfo worldInfo;
+    private Random random;
+    private int next;
+
+    @Setup
+    public void setup() {
+        generator = new BackroomGenerator(new LayoutOracle(Stubs.levelConfig(level)), new LightIndex(), Metrics.DISABLED);
+        chunkData = new MemoryChunkData(-64, 320);
+        worldInfo = Stubs.stub(WorldInfo.class, Map.of(
+                "getName", args -> "backroom_level_" + level,
+                "getUID", args -> new UUID(0, level),
+                "getEnvironment", args -> World.Environment.NORMAL,
+                "getMinHeight", args -> -64,
+                "getMaxHeight", args -> 320));
+        random = new Random(0);
+    }
+
+    @Benchmark
+    public MemoryChunkData generateNoise() {
+        int i = next++ & 1023;
+        generator.generateNoise(worldInfo, random, (i & 31) - 16, (i >> 5) - 16, chunkData);
+        return chunkData;
+    }
+}
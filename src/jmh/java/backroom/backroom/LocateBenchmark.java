@@ -0,0 +1,54 @@
+package backroom.backroom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 最も近い出口の問い合わせ（LocateIndex.nearest 1回 = 問い合わせ1回）
+// warm: 領域を覚えた後の問い合わせ（原点の周りの固定の位置を順に使う）。cold: 索引を作り直してからの初回
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocateBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int level;
+
+    private BackroomLevel backroomLevel;
+    private final int[] queryX = new int[1024];
+    private final int[] queryZ = new int[1024];
+    private int next;
+
+    @Setup
+    public void setup() {
+        Stubs.installServer();
+        backroomLevel = new BackroomLevel(Stubs.levelConfig(level), Collections.emptyList());
+        Random random = new Random(0);
+        for (int i = 0; i < queryX.length; i++) {
+            queryX[i] = random.nextInt(512) - 256;
+            queryZ[i] = random.nextInt(512) - 256;
+            backroomLevel.locateIndex.nearest(LocateIndex.EXIT, queryX[i], queryZ[i], -5000, 5000);
+        }
+    }
+
+    @Benchmark
+    public int[] warm() {
+        int i = next;
+        next = (i + 1) & (queryX.length - 1);
+        return backroomLevel.locateIndex.nearest(LocateIndex.EXIT, queryX[i], queryZ[i], -5000, 5000);
+    }
+
+    @Benchmark
+    public int[] cold() {
+        return new LocateIndex(backroomLevel.oracle).nearest(LocateIndex.EXIT, 0, 0, -5000, 5000);
+    }
+}
@@ -0,0 +1,120 @@
+package backroom.backroom;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 移動イベントの判定（MoveHandler.onMove 1回 = 移動イベント1回）
+// レベル間の移動は数えるだけの Transitions に置き換え、毎回の判定だけを測る
+// metrics は計測の有無（無効のときの費用がほぼ0であることの確認）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MoveBenchmark {
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private MoveHandler handler;
+    private Player player;
+    private int transitions;
+
+    // バックルーム：同じブロック内の移動（視点の回転など、最も多い）
+    private Location backroomFrom;
+    private Location backroomSameBlock;
+    // バックルーム：隣のブロックへの移動（出口のキャッシュと足元のブロックを読む）
+    private Location[] backroomSteps;
+    // 通常世界：小さな歩み（移動距離を積算し、15ブロックごとにノークリップ判定）
+    private Location overworldFrom;
+    private Location overworldTo;
+    private int step;
+
+    @Setup
+    public void setup() {
+        BackroomLevel level = new BackroomLevel(Stubs.levelConfig(0), Collections.emptyList());
+        World backroom = Stubs.stub(World.class, Map.of(
+                "getType", args -> Material.YELLOW_CONCRETE,
+                "getName", args -> level.worldName()));
+        World overworld = Stubs.stub(World.class, Map.of("getName", args -> "world"));
+        level.world = backroom;
+
+        player = Stubs.stub(Player.class, Map.of(
+                "getEntityId", args -> 1,
+                "getUniqueId", args -> new UUID(0, 1),
+                "getName", args -> "bench"));
+        BackroomSession session = new BackroomSession(new UUID(0, 1), 1);
+
+        MoveHandler.Transitions counting = new MoveHandler.Transitions() {
+            @Override
+            public void outOfBounds(Player player, BackroomSession session, BackroomLevel level) {
+                transitions++;
+            }
+
+            @Override
+            public void exit(Player player, BackroomSession session, BackroomLevel level) {
+                transitions++;
+            }
+
+            @Override
+            public void descend(Player player, BackroomSession session, BackroomLevel level) {
+                transitions++;
+            }
+
+            @Override
+            public void noclip(Player player, BackroomSession session) {
+                transitions++;
+            }
+        };
+        Metrics recorder = new Metrics(metrics);
+        handler = new MoveHandler(world -> world == backroom ? level : null, p -> session,
+                new TransferPipeline(null, recorder), counting,
+                new PlayerStore(null, new File("players.dat"), Logger.getLogger("bench"), recorder), // 開始しないので書き込まない
+                new Random(0), -5000, 5000, 3, recorder);
+
+        int y = level.config.baseY + 1;
+        backroomFrom = new Location(backroom, 10.2, y, 10.2);
+        backroomSameBlock = new Location(backroom, 10.7, y, 10.4);
+        backroomSteps = new Location[]{
+                new Location(backroom, 10.5, y, 10.5),
+                new Location(backroom, 11.5, y, 10.5)
+        };
+        overworldFrom = new Location(overworld, 0.0, 64, 0.0);
+        overworldTo = new Location(overworld, 0.2, 64, 0.1);
+    }
+
+    @Benchmark
+    public int backroomSameBlock() {
+        handler.onMove(player, backroomFrom, backroomSameBlock);
+        return transitions;
+    }
+
+    @Benchmark
+    public int backroomStep() {
+        int i = step++ & 1;
+        handler.onMove(player, backroomSteps[i], backroomSteps[i ^ 1]);
+        return transitions;
+    }
+
+    @Benchmark
+    public int overworldStep() {
+        handler.onMove(player, overworldFrom, overworldTo);
+        return transitions;
+    }
+}
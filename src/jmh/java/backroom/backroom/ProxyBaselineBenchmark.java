@@ -0,0 +1,34 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// 代役のプロキシを1回呼ぶだけの費用（他のベンチマークの時間と割り当てから差し引く基準）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProxyBaselineBenchmark {
+
+    private World world;
+    private int x;
+
+    @Setup
+    public void setup() {
+        world = Stubs.stub(World.class, Map.of("getType", args -> Material.YELLOW_CONCRETE));
+    }
+
+    @Benchmark
+    public Material getType() {
+        return world.getType(x++ & 1023, 60, 0);
+    }
+}
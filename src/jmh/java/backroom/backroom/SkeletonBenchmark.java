@@ -0,0 +1,135 @@
+package backroom.backroom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// 骨組みのテンプレートの効果（チャンクの配置 1回 = 1チャンク、chunks/s）
+// skeleton は生成器の layout（テンプレートの上に列ごとの規則を重ねる）
+// perColumn はテンプレート導入前と同じく、すべての列で LayoutOracle.wall / light を評価する
+// 準備の時点で両者の配置が一致することを確かめる
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SkeletonBenchmark {
+
+    @Param({"0", "1", "2"})
+    public int level;
+
+    private LevelConfig config;
+    private LayoutOracle oracle;
+    private BackroomGenerator generator;
+    private ChunkLayout layout;
+    private double[] noise;
+    private int next;
+
+    @Setup
+    public void setup() {
+        config = Stubs.levelConfig(level);
+        oracle = new LayoutOracle(config);
+        generator = new BackroomGenerator(oracle, new LightIndex(), Metrics.DISABLED);
+        layout = new ChunkLayout();
+        noise = new double[2 * 16 * 16];
+
+        ChunkLayout expected = new ChunkLayout();
+        for (int i = 0; i < 1024; i++) {
+            perColumn(chunkX(i), chunkZ(i), expected);
+            generator.layout(chunkX(i), chunkZ(i), layout);
+            if (!sameLayout(expected, layout)) {
+                throw new IllegalStateException("テンプレートの配置が列ごとの規則と一致しません: "
+                        + chunkX(i) + ", " + chunkZ(i));
+            }
+        }
+    }
+
+    private static boolean sameLayout(ChunkLayout a, ChunkLayout b) {
+        return Arrays.equals(a.walls, b.walls) && Arrays.equals(a.lights, b.lights)
+                && Arrays.equals(a.exits, b.exits) && Arrays.equals(a.stairs, b.stairs)
+                && Arrays.equals(a.damagedFloor, b.damagedFloor) && Arrays.equals(a.wetFloor, b.wetFloor)
+                && Arrays.equals(a.decorations, b.decorations) && Arrays.equals(a.decorationKinds, b.decorationKinds);
+    }
+
+    // 正と負の座標にまたがる 32×32 チャンク
+    private static int chunkX(int i) {
+        return (i & 31) - 16;
+    }
+
+    private static int chunkZ(int i) {
+        return (i >> 5) - 16;
+    }
+
+    @Benchmark
+    public ChunkLayout skeleton() {
+        int i = next++ & 1023;
+        generator.layout(chunkX(i), chunkZ(i), layout);
+        return layout;
+    }
+
+    @Benchmark
+    public ChunkLayout perColumn() {
+        int i = next++ & 1023;
+        perColumn(chunkX(i), chunkZ(i), layout);
+        return layout;
+    }
+
+    // テンプレート導入前の配置（すべての列で壁と照明の規則を最初から評価する）
+    private void perColumn(int chunkX, int chunkZ, ChunkLayout out) {
+        LevelConfig config = this.config;
+        long seed = config.seed;
+        int decorationKinds = config.decorationMaterials.length;
+        int worldXStart = chunkX * 16;
+        int worldZStart = chunkZ * 16;
+        if (config.usesNoise) {
+            oracle.noiseField.fillChunk(worldXStart, worldZStart, noise, 0);
+            oracle.noiseField.fillChunk(worldZStart, worldXStart, noise, 256);
+        }
+
+        out.clear();
+        for (int x = 0; x < 16; x++) {
+            int absX = worldXStart + x;
+            for (int z = 0; z < 16; z++) {
+                int absZ = worldZStart + z;
+                int index = ChunkLayout.index(x, z);
+                boolean wall = LayoutOracle.wall(config, absX, absZ, noise[index], noise[256 + ChunkLayout.index(z, x)]);
+                ChunkLayout.set(out.walls, index, bit(wall));
+
+                if (config.floorDamageChance > 0.0
+                        && ColumnRandom.nextDouble(seed, absX, absZ, LayoutOracle.SALT_FLOOR_DAMAGE) < config.floorDamageChance) {
+                    ChunkLayout.set(out.damagedFloor, index,
+                            bit(ColumnRandom.nextDouble(seed, absX, absZ, LayoutOracle.SALT_FLOOR_POWDER) < 0.5));
+                    if (config.waterChance > 0.0) {
+                        ChunkLayout.set(out.wetFloor, index,
+                                bit(ColumnRandom.nextDouble(seed, absX, absZ, LayoutOracle.SALT_FLOOR_WATER) < config.waterChance));
+                    }
+                }
+                if (wall) {
+                    continue;
+                }
+
+                ChunkLayout.set(out.lights, index, bit(LayoutOracle.light(config, absX, absZ)));
+                ChunkLayout.set(out.exits, index, bit(LayoutOracle.exit(config, absX, absZ)));
+                if (config.stairChance > 0.0) {
+                    ChunkLayout.set(out.stairs, index, bit(LayoutOracle.stair(config, absX, absZ)));
+                }
+                if (config.decorationChance > 0.0) {
+                    ChunkLayout.set(out.decorations, index, bit(LayoutOracle.decoration(config, absX, absZ)));
+                    out.decorationKinds[index] = decorationKinds > 1
+                            ? (byte) (ColumnRandom.nextDouble(seed, absX, absZ, LayoutOracle.SALT_DECORATION_KIND) * decorationKinds)
+                            : 0;
+                }
+            }
+        }
+    }
+
+    private static long bit(boolean value) {
+        return value ? 1L : 0L;
+    }
+}
@@ -0,0 +1,238 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.generator.WorldInfo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// バックルーム用カスタムワールドジェネレータ
+// 不変の LevelConfig と列ごとのハッシュ乱数だけを使うので、複数のワールド生成スレッドから並行して呼ばれても安全
+// 列ごとの規則は LayoutOracle と共有する（チャンクを読まない問い合わせと生成結果が一致する）
+final class BackroomGenerator extends ChunkGenerator {
+
+    // 照明位置の作業用バッファ（生成スレッドごと）
+    private static final ThreadLocal<int[]> LIGHT_BUFFER = ThreadLocal.withInitial(() -> new int[16 * 16 * 2]);
+
+    // 列ごとのノイズ値の作業用バッファ（生成スレッドごと、noise1 と noise2 の2面）
+    private static final ThreadLocal<double[]> NOISE_BUFFER = ThreadLocal.withInitial(() -> new double[2 * 16 * 16]);
+
+    // チャンク配置のビットマスク（生成スレッドごと）
+    private static final ThreadLocal<ChunkLayout> LAYOUT_BUFFER = ThreadLocal.withInitial(ChunkLayout::new);
+
+    private final LevelConfig config;
+    private final LightIndex lightIndex;
+    private final NoiseField noiseField;
+    private final ChunkSkeleton skeleton;
+    private final Metrics.Histogram generateTime; // チャンクごとの生成時間（回数 = 生成したチャンク数）
+    private final Metrics metrics;
+    private final List<BlockPopulator> populators; // 部屋のテンプレート（無ければ空）
+
+    BackroomGenerator(LayoutOracle oracle, LightIndex lightIndex, Metrics metrics) {
+        this.config = oracle.config;
+        this.lightIndex = lightIndex;
+        this.noiseField = oracle.noiseField;
+        this.skeleton = oracle.skeleton;
+        this.metrics = metrics;
+        this.generateTime = metrics.histogram("generate.level" + config.level);
+        this.populators = oracle.prefabs.isEmpty()
+                ? Collections.emptyList()
+                : Collections.singletonList(new PrefabPopulator(oracle.prefabs, lightIndex, config.level, metrics));
+    }
+
+    @Override
+    public boolean isParallelCapable() {
+        return true;
+    }
+
+    @Override
+    public void generateNoise(WorldInfo worldInfo, Random random, int chunkX, int chunkZ, ChunkData chunkData) {
+        // 判定と書き込みを分ける：まずチャンク全体の配置をマスクに求め、次にブロックへ変換する
+        long start = metrics.start();
+        ChunkLayout layout = LAYOUT_BUFFER.get();
+        layout(chunkX, chunkZ, layout);
+        emit(layout, chunkX, chunkZ, chunkData);
+        generateTime.recordSince(start);
+    }
+
+    // チャンク全体の壁・照明・出口・階段・床・装飾のマスクを求める
+    // 周期的な格子と照明の位置は ChunkSkeleton のテンプレートから読み、その上に LayoutOracle の列ごとの規則
+    // （ノイズの反転・壁の隙間・照明の確率）を重ねる。結果は LayoutOracle.wall / light と同じ
+    // x の1行（16列）ずつ、要素ごとの16ビットのマスクを AND / ANDN で組み立てる
+    // 乱数はその要素が起こり得る列でだけ引く（乱数のハッシュが最も重い。壁の隙間は壁の候補の列だけ）
+    void layout(int chunkX, int chunkZ, ChunkLayout out) {
+        LevelConfig config = this.config;
+        long seed = config.seed;
+        int decorationKinds = config.decorationMaterials.length;
+
+        // 確率が0の判定は乱数を引かない（レベル内で不変なので分岐予測は外れない）
+        boolean rollDamage = config.floorDamageChance > 0.0;
+        boolean rollWater = config.waterChance > 0.0;
+        boolean rollStair = config.stairChance > 0.0;
+        boolean rollDecoration = config.decorationChance > 0.0;
+        boolean rollDecorationKind = decorationKinds > 1;
+        boolean usesNoise = config.usesNoise;
+        boolean rollLight = config.lightChance < 1.0;
+
+        // このチャンクの形の骨組み
+        int shape = skeleton.offset(chunkX, chunkZ);
+        long[] grid = skeleton.grid;
+        long[] lightSlots = skeleton.lightSlots;
+
+        int worldXStart = chunkX * 16;
+        int worldZStart = chunkZ * 16;
+
+        // ノイズは壁の規則が使うレベルでのみ評価する（使わないレベルでは閾値が無限大なので反転しない）
+        // noise2 は座標を入れ替えた同じ場なので、入れ替えたチャンク範囲を補間して転置で読む
+        double[] noise = NOISE_BUFFER.get();
+        if (usesNoise) {
+            noiseField.fillChunk(worldXStart, worldZStart, noise, 0);
+            noiseField.fillChunk(worldZStart, worldXStart, noise, 256);
+        }
+
+        out.clear();
+        for (int x = 0; x < 16; x++) {
+            int absX = worldXStart + x;
+            int word = shape + (x >>> 2);
+            int shift = (x & 3) << 4;
+
+            // 壁の候補（格子の線をノイズで反転）のうち、崩れていない列が壁
+            int candidates = (int) (grid[word] >>> shift) & 0xFFFF;
+            if (usesNoise) {
+                int flips = 0;
+                for (int z = 0; z < 16; z++) {
+                    int index = ChunkLayout.index(x, z);
+                    flips |= (LayoutOracle.flip(config, noise[index], noise[256 + ChunkLayout.index(z, x)]) ? 1 : 0) << z;
+                }
+                candidates ^= flips;
+            }
+            int walls = candidates & ~ColumnRandom.below(seed, absX, worldZStart, candidates,
+                    LayoutOracle.SALT_WALL_GAP, config.wallGapChance);
+            int open = ~walls & 0xFFFF;
+            ChunkLayout.setRow(out.walls, x, walls);
+
+            // 廊下の天井照明（壁ではない場所）
+            int lights = open & (int) (lightSlots[word] >>> shift) & 0xFFFF;
+            if (rollLight) {
+                lights = ColumnRandom.below(seed, absX, worldZStart, lights, LayoutOracle.SALT_LIGHT, config.lightChance);
+            }
+            ChunkLayout.setRow(out.lights, x, lights);
+
+            // 深いレベルでの床の損傷（壁の下も含む）
+            if (rollDamage) {
+                int damage = ColumnRandom.below(seed, absX, worldZStart, 0xFFFF,
+                        LayoutOracle.SALT_FLOOR_DAMAGE, config.floorDamageChance);
+                ChunkLayout.setRow(out.damagedFloor, x,
+                        ColumnRandom.below(seed, absX, worldZStart, damage, LayoutOracle.SALT_FLOOR_POWDER, 0.5));
+                if (rollWater) {
+                    ChunkLayout.setRow(out.wetFloor, x,
+                            ColumnRandom.below(seed, absX, worldZStart, damage, LayoutOracle.SALT_FLOOR_WATER, config.waterChance));
+                }
+            }
+
+            // 以降は壁ではない列だけの要素
+            // ランダムな出口と下階への階段
+            ChunkLayout.setRow(out.exits, x,
+                    ColumnRandom.below(seed, absX, worldZStart, open, LayoutOracle.SALT_EXIT, config.exitChance));
+            if (rollStair) {
+                ChunkLayout.setRow(out.stairs, x,
+                        ColumnRandom.below(seed, absX, worldZStart, open, LayoutOracle.SALT_STAIR, config.stairChance));
+            }
+
+            // レベル固有の装飾（種類は装飾のある列でだけ引く）
+            if (rollDecoration) {
+                int decorations = ColumnRandom.below(seed, absX, worldZStart, open,
+                        LayoutOracle.SALT_DECORATION, config.decorationChance);
+                ChunkLayout.setRow(out.decorations, x, decorations);
+                for (int rest = decorations; rest != 0; rest &= rest - 1) {
+                    int z = Integer.numberOfTrailingZeros(rest);
+                    out.decorationKinds[ChunkLayout.index(x, z)] = rollDecorationKind
+                            ? (byte) (ColumnRandom.nextDouble(seed, absX, worldZStart + z, LayoutOracle.SALT_DECORATION_KIND) * decorationKinds)
+                            : 0;
+                }
+            }
+        }
+    }
+
+    // マスクをブロックに変換する
+    private void emit(ChunkLayout layout, int chunkX, int chunkZ, ChunkData chunkData) {
+        LevelConfig config = this.config;
+        int baseY = config.baseY;
+        int wallTop = config.baseY + config.wallHeight + 1; // 壁の上端（排他的）
+        int ceilingY = config.ceilingY();
+
+        // 床と天井は一括で埋める（壁以外の空間は最初から空気なので書き込まない）
+        chunkData.setRegion(0, baseY, 0, 16, baseY + 1, 16, config.floorMaterial);
+        chunkData.setRegion(0, ceilingY, 0, 16, ceilingY + 1, 16, config.ceilingMaterial);
+
+        // x 行ごとに、z方向に連続する壁をまとめて書き込む
+        for (int x = 0; x < 16; x++) {
+            int row = ChunkLayout.row(layout.walls, x);
+            while (row != 0) {
+                int start = Integer.numberOfTrailingZeros(row);
+                int end = start + Integer.numberOfTrailingZeros(~(row >>> start));
+                chunkData.setRegion(x, baseY + 1, start, x + 1, wallTop, end, config.wallMaterial);
+                row &= -(1 << end);
+            }
+        }
+
+        // 床の上書きは後の方が優先（損傷 < 水 < 出口 < 階段）
+        overlay(chunkData, layout.damagedFloor, baseY, config.damagedFloorMaterial);
+        overlay(chunkData, layout.wetFloor, baseY, Material.WATER);
+        overlay(chunkData, layout.exits, baseY, Material.EMERALD_BLOCK);
+        overlay(chunkData, layout.stairs, baseY, Material.MOSSY_COBBLESTONE);
+
+        // このチャンクで配置した照明の位置（点滅用インデックスに記録）
+        int[] lights = LIGHT_BUFFER.get();
+        int lightCount = 0;
+
+        for (int word = 0; word < ChunkLayout.WORDS; word++) {
+            long bits = layout.lights[word];
+            while (bits != 0) {
+                int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int x = index >>> 4;
+                int z = index & 0xF;
+                chunkData.setBlock(x, ceilingY, z, config.lightMaterial);
+                lights[lightCount++] = LightIndex.pack(x, ceilingY, z);
+            }
+        }
+
+        for (int word = 0; word < ChunkLayout.WORDS; word++) {
+            long bits = layout.decorations[word];
+            while (bits != 0) {
+                int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int x = index >>> 4;
+                int z = index & 0xF;
+                Material decoration = config.decorationMaterials[layout.decorationKinds[index]];
+                chunkData.setBlock(x, baseY + 1, z, decoration);
+                if (decoration == config.lightMaterial) {
+                    lights[lightCount++] = LightIndex.pack(x, baseY + 1, z);
+                }
+            }
+        }
+
+        lightIndex.record(chunkX, chunkZ, lights, lightCount);
+    }
+
+    private static void overlay(ChunkData chunkData, long[] mask, int y, Material material) {
+        for (int word = 0; word < ChunkLayout.WORDS; word++) {
+            long bits = mask[word];
+            while (bits != 0) {
+                int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                chunkData.setBlock(index >>> 4, y, index & 0xF, material);
+            }
+        }
+    }
+
+    @Override
+    public List<BlockPopulator> getDefaultPopulators(World world) {
+        return populators;
+    }
+}
@@ -0,0 +1,43 @@
+package backroom.backroom;
+
+import org.bukkit.World;
+
+import java.util.List;
+import java.util.TreeSet;
+
+// バックルームの1レベル分の実行時情報
+// ワールドからは参照の同一性で引くので、移動イベントで文字列処理やハッシュ計算をしない
+final class BackroomLevel {
+
+    final int level;
+    final LevelConfig config;
+    final LayoutOracle oracle; // チャンクを読まない配置の問い合わせ（生成器と共有）
+    final LightIndex lightIndex = new LightIndex(); // 照明位置インデックス
+    final ExitIndex exitIndex = new ExitIndex(); // 発見済み出口のキャッシュ
+    final WalkGrid walkGrid; // 歩ける列のビット表（徘徊者の経路探索用）
+    final LocateIndex locateIndex; // 出口と階段の位置の索引（/backroom locate 用）
+    final int[] lightLayers; // 照明が置かれ得る高さ（天井と、床の上の壊れた照明と、部屋のテンプレートの照明）
+
+    volatile World world; // ワールドの作成・読み込み時に設定（Folia では各リージョンのスレッドから読まれる）
+
+    BackroomLevel(LevelConfig config, List<Prefab> prefabs) {
+        this.level = config.level;
+        this.config = config;
+        this.oracle = new LayoutOracle(config, new PrefabLayout(config, prefabs));
+        this.walkGrid = new WalkGrid(oracle);
+        this.locateIndex = new LocateIndex(oracle);
+        TreeSet<Integer> layers = new TreeSet<>();
+        layers.add(config.ceilingY());
+        if (config.hasFloorLights()) {
+            layers.add(config.baseY + 1);
+        }
+        for (int y : oracle.prefabs.lightHeights) {
+            layers.add(y);
+        }
+        this.lightLayers = layers.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    String worldName() {
+        return "backroom_level_" + level;
+    }
+}
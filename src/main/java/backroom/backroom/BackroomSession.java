@@ -0,0 +1,41 @@
+package backroom.backroom;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+// プレイヤーごとのバックルーム状態（参加時に作成し、退出時に解放する）
+// 移動イベントで毎回書き換えるので、値はすべてプリミティブで持つ
+final class BackroomSession {
+
+    final UUID playerId;
+    final int entityId;
+
+    int level = -1; // 今いるバックルームのレベル（-1 は現実。保存され、参加時にバックルームの外にいればこのレベルへ戻す）
+    double distanceTraveled; // 通常世界での移動距離
+    double sanity = 100.0; // 正気度
+    boolean stateLoaded; // 保存された状態を戻したか（戻すまでは PlayerStore に保存しない）
+
+    Player player; // 接続中のプレイヤー（退出時に null）
+    volatile long transferStartedAt; // 移動を開始した時刻（System.nanoTime、0 は移動中でない）
+
+    // 効果ホイールの状態（EffectScheduler が管理）
+    int wheelSlot = -1;
+    int[] effectCountdowns; // 効果ごとの次の実行までの残りティック
+    boolean effectQueued;
+    ScheduledTask effectTask; // Folia でのプレイヤーごとの効果タスク
+    final EffectQueue.Outbox effects = new EffectQueue.Outbox(); // 次のティックに送る効果・音・チャット
+
+    // 正気度の計算の受け渡し（SanityEngine が管理）
+    int sanityEpoch; // 正気度をリセットした回数
+    volatile SanityEngine.Sample sanitySample; // 所有するスレッドが置く最新のサンプル
+    final AtomicReference<SanityEngine.Result> sanityResult = new AtomicReference<>(); // まだ反映していない計算結果
+    SanityEngine.Sample sanityProcessed; // 最後に計算したサンプル（計算スレッドのみ）
+
+    BackroomSession(UUID playerId, int entityId) {
+        this.playerId = playerId;
+        this.entityId = entityId;
+    }
+}
@@ -1,30 +1,36 @@
 package backroom.backroom;
 
 import org.bukkit.*;
-import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
-import org.bukkit.generator.BlockPopulator;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.generator.ChunkGenerator;
-import org.bukkit.generator.WorldInfo;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.util.noise.SimplexOctaveGenerator;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class BagRoomPlugin extends JavaPlugin implements Listener {
 
@@ -38,48 +44,96 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
     private boolean enableLightFlicker = true;
     private boolean enableAmbientSounds = true;
     private boolean enableFogEffect = true;
-    private double difficultyScaling = 1.0; // 難易度スケーリング
+    private boolean enableSanity = true; // 正気度の減少と、それによる効果
+    private double difficultyScaling = 1.0; // 難易度スケーリング（正気度の減る速さの倍率）
+    private double effectTickBudgetMs = 1.0; // 環境効果に使う1ティックあたりの時間の上限
+    private int pregenMaxInFlight = 8; // 事前生成で同時に読み込むチャンク数の上限
+    private double pregenMsptLimit = 40.0; // この MSPT を超えたら事前生成を控える
+    private boolean ephemeralWorlds = false; // バックルームのワールドを保存せず、必要なときに再生成する
+    private boolean metricsEnabled = false; // 処理時間と回数を記録する（/backroom stats）
+    private int metricsCsvIntervalSeconds = 0; // 記録を metrics.csv に追記する間隔（0 なら出力しない）
+    private int effectPacketsPerTick = 4; // 効果・音・チャットでプレイヤーに送る1ティックあたりのパケット数の上限
+    private int stalkersPerLevel = 16; // レベルごとの徘徊者の数の上限（0 なら出さない）
 
     // 世界データ
-    private final Map<String, Integer> playerLevels = new ConcurrentHashMap<>();
-    private final Map<UUID, Long> lastFlickerTime = new ConcurrentHashMap<>();
-    private final Map<UUID, Integer> sanityLevels = new ConcurrentHashMap<>();
-    private final Set<Location> exitLocations = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final Map<UUID, Double> playerDistanceTraveled = new ConcurrentHashMap<>(); // プレイヤーの移動距離を追跡
+    private final SessionTable sessions = new SessionTable(); // プレイヤーごとの状態（エンティティIDで引く）
+    private BackroomLevel[] levels; // レベルごとの設定・インデックス・ワールド
+    private FlickerEngine flickerEngine; // セル単位の照明点滅
+    private EffectScheduler effectScheduler; // 環境効果のタイムホイール
+    private PregenTask pregenTask; // 実行中の事前生成（無ければ null）
+    private Metrics metrics; // 処理時間のヒストグラムと回数
+    private TransferPipeline transfers; // レベル間の非同期移動
+    private EffectQueue effects; // プレイヤーごとの効果・音・チャットの送信待ち
+    private MoveHandler moveHandler; // 移動ごとの判定
+    private SanityEngine sanityEngine; // 正気度の計算（無効なら null）
+    private PlayerStore store; // プレイヤーごとの状態の保存
+    private StalkerEngine stalkerEngine; // プレイヤーを追う徘徊者（無効なら null）
 
     // ランダム生成用
     private final Random random = new Random();
+    private static final int SPAWN_ATTEMPTS = 64; // スポーン位置を探す回数
 
-    // 各レベルの素材
-    private final Material[][] LEVEL_MATERIALS = {
-            // レベル0 - 古典的な黄色のバックルーム
-            {
-                    Material.YELLOW_CONCRETE, // 床
-                    Material.YELLOW_TERRACOTTA, // 壁
-                    Material.YELLOW_STAINED_GLASS, // 天井
-                    Material.GLOWSTONE // 照明
-            },
-            // レベル1 - より暗く、損傷が激しい
-            {
-                    Material.YELLOW_TERRACOTTA, // 床
-                    Material.YELLOW_CONCRETE, // 壁
-                    Material.YELLOW_WOOL, // 天井
-                    Material.REDSTONE_LAMP // 照明（点滅可能）
-            },
-            // レベル2 - 放棄され、植物が生えている
-            {
-                    Material.YELLOW_CONCRETE_POWDER, // 床
-                    Material.STRIPPED_BIRCH_WOOD, // 壁
-                    Material.BIRCH_PLANKS, // 天井
-                    Material.LANTERN // 照明（まばら）
+    // 使い回す効果（PotionEffect は不変なので、送るたびに作らない）
+    private static final PotionEffect FOG_BLINDNESS = new PotionEffect(PotionEffectType.BLINDNESS, 40, 0, false, false);
+    private static final PotionEffect FOG_NAUSEA = new PotionEffect(PotionEffectType.NAUSEA, 100, 0, false, false);
+    private static final PotionEffect NOCLIP_BLINDNESS = new PotionEffect(PotionEffectType.BLINDNESS, 60, 0);
+    private static final PotionEffect NOCLIP_NAUSEA = new PotionEffect(PotionEffectType.NAUSEA, 80, 0);
+    private static final PotionEffect CLIMB_BLINDNESS = new PotionEffect(PotionEffectType.BLINDNESS, 30, 0);
+    private static final PotionEffect DESCEND_NAUSEA = new PotionEffect(PotionEffectType.NAUSEA, 100, 0);
+
+    // jar に同梱する部屋のテンプレート
+    private static final String[] BUNDLED_PREFABS = {"office", "pillar_hall", "pool"};
+
+    @Override
+    public void onLoad() {
+        initLevels();
+
+        // 使い捨てモード：前回のワールドを消してから読み込ませる（ワールドの読み込みより先に呼ばれる）
+        if (ephemeralWorlds) {
+            for (BackroomLevel level : levels) {
+                wipeWorldFolder(level.worldName());
             }
-    };
+        }
+    }
 
     @Override
     public void onEnable() {
-        // デフォルト設定を保存
-        saveDefaultConfig();
-        loadConfig();
+        initLevels();
+
+        // 環境効果をタイムホイールに登録（プレイヤーごとに時間をずらして実行）
+        effectScheduler = new EffectScheduler(this, this::levelOf, (long) (effectTickBudgetMs * 1_000_000), metrics);
+        effects = new EffectQueue(this, effectPacketsPerTick, metrics);
+        effectScheduler.addTicker(effects::tick);
+        store = new PlayerStore(this, new File(getDataFolder(), "players.dat"), getLogger(), metrics);
+        store.start();
+        if (enableLightFlicker) {
+            flickerEngine = new FlickerEngine(this, effects, this::sessionOf, metrics);
+            effectScheduler.addTicker(flickerEngine::tick);
+            effectScheduler.register("flicker", this::checkLightFlicker, 100); // 5秒ごとにチェック
+        }
+
+        if (enableAmbientSounds) {
+            effectScheduler.register("ambient_sound", this::playAmbientSound, 160); // 8秒ごと
+        }
+
+        if (enableFogEffect) {
+            effectScheduler.register("fog", this::applyFogEffect, 400); // 20秒ごと
+        }
+
+        if (enableSanity) {
+            sanityEngine = new SanityEngine(this, sessions, effects, flickerEngine, store, this::sessionOf,
+                    difficultyScaling, metrics);
+            effectScheduler.register("sanity", sanityEngine::sample, 20); // 1秒ごとにサンプルを置き、計算は非同期スレッド
+        }
+
+        if (stalkersPerLevel > 0) {
+            stalkerEngine = new StalkerEngine(this, levels, effects, this::sessionOf, stalkersPerLevel, metrics);
+            effectScheduler.register("stalker", stalkerEngine::track, 20); // 1秒ごとに追われる位置を置き、徘徊者を出す
+        }
+
+        transfers = new TransferPipeline(this, metrics);
+        moveHandler = new MoveHandler(this::levelOf, this::sessionOf, transfers, new BackroomTransitions(),
+                store, random, ROOM_MIN, ROOM_MAX, MAX_LEVELS, metrics);
 
         // イベントを登録
         getServer().getPluginManager().registerEvents(this, this);
@@ -90,23 +144,52 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
 
         // ワールドが存在しない場合は初期化
         for (int level = 0; level < MAX_LEVELS; level++) {
-            String worldName = "backroom_level_" + level;
-            if (Bukkit.getWorld(worldName) == null) {
+            World world = Bukkit.getWorld(levels[level].worldName());
+            if (world != null) {
+                levels[level].world = world;
+                // 以前のバージョンで作られたワールドにも設定する
+                world.setGameRule(GameRule.MOB_GRIEFING, false);
+                if (ephemeralWorlds) {
+                    world.setAutoSave(false);
+                }
+            } else if (RegionSupport.FOLIA) {
+                // Folia では実行中にワールドを作成できない（サーバー側でこのプラグインのジェネレータを指定して用意する）
+                getLogger().warning("ワールド " + levels[level].worldName() + " が見つかりません。"
+                        + "Folia ではジェネレータ BagRoomPlugin:" + level + " でサーバー側に作成してください");
+            } else {
                 createBackroomWorld(level);
             }
         }
 
+        // リロード時に既に接続しているプレイヤーのセッションを作成（今いるレベルを判定するので、ワールドの準備の後）
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            createSession(player);
+        }
+
         // 環境タスクを開始
-        if (enableLightFlicker) {
-            startLightFlickerTask();
+        effectScheduler.start();
+        if (sanityEngine != null) {
+            sanityEngine.start();
         }
 
-        if (enableAmbientSounds) {
-            startAmbientSoundTask();
+        // 記録を定期的に CSV へ追記（ファイルの書き込みはメインスレッドの外で行う）
+        if (metricsEnabled && metricsCsvIntervalSeconds > 0) {
+            File csv = new File(getDataFolder(), "metrics.csv");
+            Bukkit.getAsyncScheduler().runAtFixedRate(this, task -> {
+                try {
+                    metrics.appendCsv(csv, System.currentTimeMillis());
+                } catch (IOException e) {
+                    getLogger().warning("metrics.csv に書き込めません: " + e.getMessage());
+                }
+            }, metricsCsvIntervalSeconds, metricsCsvIntervalSeconds, TimeUnit.SECONDS);
         }
 
-        if (enableFogEffect) {
-            startFogEffectTask();
+        // 再起動前に中断した事前生成を続きから再開（使い捨てモードではチャンクが残らないので再開しない）
+        if (!ephemeralWorlds) {
+            pregenTask = PregenTask.resume(this, pregenCheckpointFile(), levels, pregenMaxInFlight, pregenMsptLimit);
+            if (pregenTask != null) {
+                pregenTask.start();
+            }
         }
 
         getLogger().info("バックルームプラグインが有効化されました。現実からのノークリップを開始します...");
@@ -114,11 +197,64 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
 
     @Override
     public void onDisable() {
-        // すべてのタスクをキャンセル
-        Bukkit.getScheduler().cancelTasks(this);
+        // 事前生成の進捗を保存して止める（次回の起動時に再開）
+        if (pregenTask != null) {
+            pregenTask.shutdown();
+        }
+
+        // すべてのタスクをキャンセル（プレイヤーごとのタスクはプラグインの無効化で破棄される）
+        Bukkit.getGlobalRegionScheduler().cancelTasks(this);
+        Bukkit.getAsyncScheduler().cancelTasks(this);
+        if (stalkerEngine != null) {
+            stalkerEngine.removeAll();
+        }
+
+        // 接続中のプレイヤーの状態を書き込んでから閉じる（停止時はプレイヤーの退出より先に無効化される）
+        if (store != null) {
+            for (BackroomSession session : sessions.values()) {
+                store.capture(session);
+            }
+            store.close();
+        }
         getLogger().info("バックルームプラグインが無効化されました。現実に戻りました。");
     }
 
+    // 設定を読み込んでレベルを構築する（起動時のワールド読み込みで onEnable より先に呼ばれることがある）
+    private void initLevels() {
+        if (levels != null) {
+            return;
+        }
+
+        // デフォルト設定を保存
+        saveDefaultConfig();
+        loadConfig();
+        metrics = new Metrics(metricsEnabled);
+
+        // レベルの定義は levels.<番号> から（定義の無い深いレベルは最も深い定義を引き継ぐ）
+        LevelProfile[] profiles = LevelProfile.loadAll(getConfig().getConfigurationSection("levels"), MAX_LEVELS,
+                getLogger());
+        List<Prefab> prefabs = loadPrefabs();
+        BackroomLevel[] built = new BackroomLevel[MAX_LEVELS];
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            built[level] = new BackroomLevel(new LevelConfig(level, profiles[level], FLOOR_HEIGHT, WALL_HEIGHT,
+                    EXIT_CHANCE, MAX_LEVELS), prefabs);
+        }
+        levels = built;
+    }
+
+    // 部屋のテンプレート（prefabs フォルダが無ければ同梱の例を書き出す）
+    private List<Prefab> loadPrefabs() {
+        File folder = new File(getDataFolder(), "prefabs");
+        if (!folder.exists()) {
+            for (String name : BUNDLED_PREFABS) {
+                saveResource("prefabs/" + name + ".yml", false);
+            }
+        }
+        List<Prefab> prefabs = Prefab.loadAll(folder, getLogger());
+        getLogger().info("部屋のテンプレートを " + prefabs.size() + " 個読み込みました");
+        return prefabs;
+    }
+
     private void loadConfig() {
         FileConfiguration config = getConfig();
 
@@ -132,7 +268,16 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
         config.addDefault("enable_light_flicker", enableLightFlicker);
         config.addDefault("enable_ambient_sounds", enableAmbientSounds);
         config.addDefault("enable_fog_effect", enableFogEffect);
+        config.addDefault("enable_sanity", enableSanity);
         config.addDefault("difficulty_scaling", difficultyScaling);
+        config.addDefault("effect_tick_budget_ms", effectTickBudgetMs);
+        config.addDefault("effect_packets_per_tick", effectPacketsPerTick);
+        config.addDefault("stalkers_per_level", stalkersPerLevel);
+        config.addDefault("pregen_max_in_flight", pregenMaxInFlight);
+        config.addDefault("pregen_mspt_limit", pregenMsptLimit);
+        config.addDefault("ephemeral_worlds", ephemeralWorlds);
+        config.addDefault("metrics_enabled", metricsEnabled);
+        config.addDefault("metrics_csv_interval_seconds", metricsCsvIntervalSeconds);
         config.options().copyDefaults(true);
         saveConfig();
 
@@ -140,20 +285,230 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
         ROOM_MIN = config.getInt("room_min");
         ROOM_MAX = config.getInt("room_max");
         FLOOR_HEIGHT = config.getInt("floor_height");
-        MAX_LEVELS = config.getInt("max_levels");
+        MAX_LEVELS = Math.max(1, config.getInt("max_levels"));
         WALL_HEIGHT = config.getInt("wall_height");
         EXIT_CHANCE = config.getDouble("exit_chance");
         enableLightFlicker = config.getBoolean("enable_light_flicker");
         enableAmbientSounds = config.getBoolean("enable_ambient_sounds");
         enableFogEffect = config.getBoolean("enable_fog_effect");
+        enableSanity = config.getBoolean("enable_sanity");
         difficultyScaling = config.getDouble("difficulty_scaling");
+        effectTickBudgetMs = config.getDouble("effect_tick_budget_ms");
+        effectPacketsPerTick = config.getInt("effect_packets_per_tick");
+        stalkersPerLevel = Math.max(0, config.getInt("stalkers_per_level"));
+        pregenMaxInFlight = config.getInt("pregen_max_in_flight");
+        pregenMsptLimit = config.getDouble("pregen_mspt_limit");
+        ephemeralWorlds = config.getBoolean("ephemeral_worlds");
+        metricsEnabled = config.getBoolean("metrics_enabled");
+        metricsCsvIntervalSeconds = config.getInt("metrics_csv_interval_seconds");
+    }
+
+    // bukkit.yml などでジェネレータ "BagRoomPlugin:<レベル>" を指定したワールド用
+    @Override
+    public ChunkGenerator getDefaultWorldGenerator(String worldName, String id) {
+        int level;
+        try {
+            level = id == null || id.isEmpty() ? 0 : Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            getLogger().warning("無効なジェネレータID: " + id);
+            return null;
+        }
+        initLevels();
+        if (level < 0 || level >= levels.length) {
+            getLogger().warning("ジェネレータのレベルが範囲外です: " + id);
+            return null;
+        }
+        return new BackroomGenerator(levels[level].oracle, levels[level].lightIndex, metrics);
+    }
+
+    private File pregenCheckpointFile() {
+        return new File(getDataFolder(), "pregen.yml");
+    }
+
+    // /backroom pregen <レベル> <半径> | pause | resume | stop | status
+    private void handlePregenCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("backroom.admin.pregen")) {
+            sender.sendMessage(ChatColor.RED + "【エラー】このコマンドを使用する権限がありません");
+            return;
+        }
+
+        String action = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : "status";
+        boolean running = pregenTask != null && pregenTask.isRunning();
+        switch (action) {
+            case "status":
+                sender.sendMessage(running
+                        ? ChatColor.GOLD + "【事前生成】" + ChatColor.GRAY + pregenTask.describe()
+                        : ChatColor.GRAY + "【事前生成】実行中の事前生成はありません");
+                return;
+            case "pause":
+            case "resume":
+            case "stop":
+                if (!running) {
+                    sender.sendMessage(ChatColor.RED + "【エラー】実行中の事前生成はありません");
+                    return;
+                }
+                if (action.equals("pause")) {
+                    pregenTask.pause();
+                    sender.sendMessage(ChatColor.YELLOW + "【事前生成】一時停止しました");
+                } else if (action.equals("resume")) {
+                    pregenTask.resume();
+                    sender.sendMessage(ChatColor.YELLOW + "【事前生成】再開しました");
+                } else {
+                    pregenTask.stop();
+                    sender.sendMessage(ChatColor.YELLOW + "【事前生成】中止しました");
+                }
+                return;
+            default:
+                break;
+        }
+
+        if (ephemeralWorlds) {
+            sender.sendMessage(ChatColor.RED + "【エラー】使い捨てモード（ephemeral_worlds）ではチャンクを保存しないため事前生成できません");
+            return;
+        }
+        if (args.length < 3) {
+            sender.sendMessage(ChatColor.RED + "【使い方】/backroom pregen <レベル> <半径> | pause | resume | stop | status");
+            return;
+        }
+        if (running) {
+            sender.sendMessage(ChatColor.RED + "【エラー】事前生成は既に実行中です（/backroom pregen stop で中止）");
+            return;
+        }
+
+        int level;
+        int radius;
+        try {
+            level = Integer.parseInt(args[1]);
+            radius = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + "【エラー】無効なレベルまたは半径");
+            return;
+        }
+        if (level < 0 || level >= MAX_LEVELS) {
+            sender.sendMessage(ChatColor.RED + "【エラー】無効なレベル。0から" + (MAX_LEVELS - 1) + "の間でなければなりません");
+            return;
+        }
+        if (radius < 0) {
+            sender.sendMessage(ChatColor.RED + "【エラー】半径は0以上でなければなりません");
+            return;
+        }
+
+        World world = worldFor(level);
+        if (world == null) {
+            sender.sendMessage(ChatColor.RED + "【エラー】バックルームレベル " + level + " は利用できません");
+            return;
+        }
+
+        pregenTask = new PregenTask(this, pregenCheckpointFile(), world, level, radius,
+                pregenMaxInFlight, pregenMsptLimit, 0, false);
+        pregenTask.start();
+        sender.sendMessage(ChatColor.GOLD + "【事前生成】開始しました: " + ChatColor.GRAY + pregenTask.describe());
+    }
+
+    // (x, z) から最も近い出口（エメラルドブロック）の位置。バックルームのワールドでないか、近くに無ければ null
+    // 生成の規則から求めるのでチャンクを読まない（どのスレッドからでも呼べる。コンパスのヒントなどに）
+    public Location findNearestExit(World world, int x, int z) {
+        return locate(levelOf(world), LocateIndex.EXIT, x, z);
+    }
+
+    // (x, z) から最も近い下層への階段（苔むした丸石）の位置。最深レベルや近くに無ければ null
+    public Location findNearestStair(World world, int x, int z) {
+        return locate(levelOf(world), LocateIndex.STAIR, x, z);
+    }
+
+    private Location locate(BackroomLevel level, int kind, int x, int z) {
+        if (level == null) {
+            return null;
+        }
+        long start = metrics.start();
+        int[] found = level.locateIndex.nearest(kind, x, z, ROOM_MIN, ROOM_MAX);
+        metrics.histogram(kind == LocateIndex.EXIT ? "locate.exit" : "locate.stair").recordSince(start);
+        if (found == null) {
+            return null;
+        }
+        return new Location(level.world, found[0] + 0.5, level.config.baseY, found[1] + 0.5);
+    }
+
+    // /backroom locate <exit|stairs> [レベル]
+    // レベルを省略するとプレイヤーのいるレベル。位置はプレイヤーの座標から（コンソールでは原点から）
+    private void handleLocateCommand(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("backroom.admin.locate")) {
+            sender.sendMessage(ChatColor.RED + "【エラー】このコマンドを使用する権限がありません");
+            return;
+        }
+        String target = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : "";
+        int kind;
+        String name;
+        switch (target) {
+            case "exit":
+                kind = LocateIndex.EXIT;
+                name = "出口";
+                break;
+            case "stairs":
+            case "stair":
+                kind = LocateIndex.STAIR;
+                name = "階段";
+                break;
+            default:
+                sender.sendMessage(ChatColor.RED + "【使い方】/backroom locate <exit|stairs> [レベル]");
+                return;
+        }
+
+        Player player = sender instanceof Player ? (Player) sender : null;
+        BackroomLevel level = player != null ? levelOf(player.getWorld()) : null;
+        if (args.length > 2) {
+            try {
+                int number = Integer.parseInt(args[2]);
+                if (number < 0 || number >= MAX_LEVELS) {
+                    sender.sendMessage(ChatColor.RED + "【エラー】レベルは0から" + (MAX_LEVELS - 1) + "の間で指定してください");
+                    return;
+                }
+                level = levels[number];
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "【エラー】無効なレベル番号です");
+                return;
+            }
+        }
+        if (level == null) {
+            sender.sendMessage(ChatColor.RED + "【使い方】バックルームの外ではレベルを指定してください: /backroom locate " + target + " <レベル>");
+            return;
+        }
+
+        int x = 0;
+        int z = 0;
+        if (player != null) {
+            Location loc = player.getLocation();
+            x = loc.getBlockX();
+            z = loc.getBlockZ();
+        }
+        Location found = locate(level, kind, x, z);
+        if (found == null) {
+            sender.sendMessage(kind == LocateIndex.STAIR && level.config.stairChance <= 0.0
+                    ? ChatColor.GRAY + "【位置情報】レベル " + level.level + " は最深レベルのため階段はありません"
+                    : ChatColor.GRAY + "【位置情報】レベル " + level.level + " の約"
+                    + (LocateIndex.MAX_RINGS * LocateIndex.REGION_SIZE) + "ブロック以内に" + name + "はありません");
+            return;
+        }
+        double distance = Math.sqrt(Math.pow(found.getX() - (x + 0.5), 2) + Math.pow(found.getZ() - (z + 0.5), 2));
+        sender.sendMessage(ChatColor.GOLD + "【位置情報】レベル " + level.level + " の最も近い" + name + ": "
+                + ChatColor.WHITE + found.getBlockX() + ", " + found.getBlockY() + ", " + found.getBlockZ()
+                + ChatColor.GRAY + String.format("（約 %.0f ブロック）", distance));
+    }
+
+    // レベルのワールド（未作成なら作成する。Folia では実行中に作成できないので null）
+    private World worldFor(int level) {
+        World world = levels[level].world;
+        if (world == null && !RegionSupport.FOLIA) {
+            world = createBackroomWorld(level);
+        }
+        return world;
     }
 
     private World createBackroomWorld(int level) {
-        String worldName = "backroom_level_" + level;
-        WorldCreator creator = new WorldCreator(worldName);
+        BackroomLevel backroomLevel = levels[level];
+        WorldCreator creator = new WorldCreator(backroomLevel.worldName());
         creator.environment(World.Environment.NORMAL);
-        creator.generator(new BackroomGenerator(level));
+        creator.generator(new BackroomGenerator(backroomLevel.oracle, backroomLevel.lightIndex, metrics));
         creator.type(WorldType.FLAT);
         creator.generateStructures(false);
 
@@ -162,340 +517,271 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
         world.setGameRule(GameRule.DO_DAYLIGHT_CYCLE, false);
         world.setGameRule(GameRule.DO_WEATHER_CYCLE, false);
         world.setGameRule(GameRule.DO_MOB_SPAWNING, false);
+        world.setGameRule(GameRule.MOB_GRIEFING, false); // スマイラー（スノーゴーレム）が雪を敷かないように
         world.setTime(18000); // 常に夜間（雰囲気のため）
+        if (ephemeralWorlds) {
+            world.setAutoSave(false);
+        }
 
+        backroomLevel.world = world;
         return world;
     }
 
-    private void startLightFlickerTask() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    if (isInBackroom(player)) {
-                        // 十分な時間が経過した場合のみ点滅
-                        UUID uuid = player.getUniqueId();
-                        long currentTime = System.currentTimeMillis();
-                        if (!lastFlickerTime.containsKey(uuid) ||
-                                currentTime - lastFlickerTime.get(uuid) > 30000) { // 点滅間隔30秒
-
-                            if (random.nextDouble() < 0.2) { // 20%の確率で点滅
-                                flickerLightsAroundPlayer(player);
-                                lastFlickerTime.put(uuid, currentTime);
-                            }
-                        }
-                    }
-                }
-            }
-        }.runTaskTimer(this, 100, 100); // 5秒ごとにチェック
-    }
-
-    private void startAmbientSoundTask() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    if (isInBackroom(player)) {
-                        // 環境音を再生
-                        int level = getPlayerLevel(player);
-
-                        switch (level) {
-                            case 0:
-                                // 蛍光灯のブーンという音
-                                player.playSound(player.getLocation(), Sound.BLOCK_BEACON_AMBIENT, 0.2f, 1.0f);
-                                break;
-                            case 1:
-                                // 遠くの足音と機械音
-                                if (random.nextBoolean()) {
-                                    player.playSound(player.getLocation(), Sound.BLOCK_BEACON_AMBIENT, 0.2f, 0.8f);
-                                } else {
-                                    player.playSound(player.getLocation(), Sound.BLOCK_METAL_PLACE, 0.1f, 0.5f);
-                                }
-                                break;
-                            case 2:
-                                // 水滴と軋み音
-                                if (random.nextBoolean()) {
-                                    player.playSound(player.getLocation(), Sound.BLOCK_LADDER_STEP, 0.1f, 0.5f);
-                                } else {
-                                    player.playSound(player.getLocation(), Sound.AMBIENT_CAVE, 0.2f, 0.7f);
-                                }
-                                break;
-                        }
-                    }
-                }
-            }
-        }.runTaskTimer(this, 60, 160); // 8秒ごと
-    }
-
-    private void startFogEffectTask() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    if (isInBackroom(player)) {
-                        // 霧効果（非常に短い時間の盲目）を適用
-                        int level = getPlayerLevel(player);
-                        if (random.nextDouble() < 0.1 * (level + 1)) {
-                            player.addPotionEffect(new PotionEffect(
-                                    PotionEffectType.BLINDNESS, 40, 0, false, false));
-                        }
-
-                        // 深いレベルでは吐き気も
-                        if (level > 0 && random.nextDouble() < 0.05 * level) {
-                            player.addPotionEffect(new PotionEffect(
-                                    PotionEffectType.NAUSEA, 100, 0, false, false));
-                        }
-                    }
-                }
-            }
-        }.runTaskTimer(this, 100, 400); // 20秒ごと
+    // ワールドのフォルダを削除する（読み込み済みのワールドには触れない）
+    private void wipeWorldFolder(String worldName) {
+        if (Bukkit.getWorld(worldName) != null) {
+            return;
+        }
+        File folder = new File(Bukkit.getWorldContainer(), worldName);
+        if (!folder.isDirectory()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            // 中身から先に消す
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            getLogger().warning("ワールド " + worldName + " を削除できません: " + e.getMessage());
+            return;
+        }
+        getLogger().info("使い捨てモード: ワールド " + worldName + " を削除しました（必要なチャンクは再生成されます）");
     }
 
-    private void flickerLightsAroundPlayer(Player player) {
-        int radius = 20;
+    private void checkLightFlicker(Player player, BackroomLevel level) {
+        // プレイヤーがいるセルを判定（同じセルのプレイヤーは同じ点滅を見る）
+        World world = level.world;
         Location loc = player.getLocation();
-        World world = player.getWorld();
-
-        // プレイヤーの現在のレベルを取得
-        int level = getPlayerLevel(player);
-        Material lightMaterial = LEVEL_MATERIALS[level][3];
-
-        // 半径内の照明ブロックを検索
-        List<Block> lightBlocks = new ArrayList<>();
-        for (int x = -radius; x <= radius; x++) {
-            for (int y = -radius; y <= radius; y++) {
-                for (int z = -radius; z <= radius; z++) {
-                    Block block = world.getBlockAt(
-                            loc.getBlockX() + x,
-                            loc.getBlockY() + y,
-                            loc.getBlockZ() + z
-                    );
-                    if (block.getType() == lightMaterial) {
-                        lightBlocks.add(block);
-                    }
-                }
-            }
+        long cell = FlickerEngine.cellKey(
+                loc.getBlockX() >> FlickerEngine.CELL_SHIFT,
+                loc.getBlockZ() >> FlickerEngine.CELL_SHIFT);
+
+        // 十分な時間が経過した場合のみ点滅
+        long currentTime = System.currentTimeMillis();
+        if (flickerEngine.isCoolingDown(world, cell, currentTime)) {
+            return;
         }
 
-        // 点滅効果 - オフにしてからオンに
-        if (!lightBlocks.isEmpty()) {
-            // プレイヤーにメッセージを送信
-            player.sendMessage(ChatColor.DARK_RED + "【警告】照明システム一時的障害発生。");
-
-            new BukkitRunnable() {
-                @Override
-                public void run() {
-                    // ライトをオフに
-                    for (Block light : lightBlocks) {
-                        player.sendBlockChange(light.getLocation(), Material.AIR.createBlockData());
-                    }
-
-                    // 音を再生
-                    player.playSound(player.getLocation(), Sound.BLOCK_GLASS_BREAK, 0.3f, 1.5f);
-
-                    // 暗闇効果
-                    player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 40, 0, false, false));
-
-                    // オンに戻すスケジュール
-                    new BukkitRunnable() {
-                        @Override
-                        public void run() {
-                            // ライトを元に戻す
-                            for (Block light : lightBlocks) {
-                                player.sendBlockChange(light.getLocation(), light.getBlockData());
-                            }
-
-                            // 音を再生
-                            player.playSound(player.getLocation(), Sound.BLOCK_BEACON_ACTIVATE, 0.2f, 1.2f);
-                        }
-                    }.runTaskLater(BagRoomPlugin.this, 15); // 0.75秒後
-                }
-            }.runTaskLater(this, 5); // 0.25秒遅延
+        if (random.nextDouble() < level.config.profile.flickerChance) { // レベルの定義の確率で点滅
+            flickerEngine.flicker(world, cell, FlickerEngine.lightsInCell(world, level, cell), currentTime);
+        } else {
+            flickerEngine.deferRoll(world, cell, currentTime);
         }
     }
 
-    private boolean isInBackroom(Player player) {
-        String worldName = player.getWorld().getName();
-        return worldName.startsWith("backroom_level_");
+    private void playAmbientSound(Player player, BackroomLevel level) {
+        // 環境音を再生（レベルの定義から1つを等確率で選ぶ）
+        LevelProfile.AmbientSound[] sounds = level.config.profile.ambientSounds;
+        if (sounds.length == 0) {
+            return;
+        }
+        BackroomSession session = sessionOf(player);
+        if (session == null) {
+            return;
+        }
+        LevelProfile.AmbientSound sound = sounds.length == 1 ? sounds[0] : sounds[random.nextInt(sounds.length)];
+        effects.sound(session, sound.key, sound.volume, sound.pitch);
     }
 
-    private int getPlayerLevel(Player player) {
-        if (!isInBackroom(player)) {
-            return 0;
+    private void applyFogEffect(Player player, BackroomLevel level) {
+        LevelProfile profile = level.config.profile;
+        BackroomSession session = sessionOf(player);
+        if (session == null) {
+            return;
         }
 
-        String worldName = player.getWorld().getName();
-        try {
-            return Integer.parseInt(worldName.replace("backroom_level_", ""));
-        } catch (NumberFormatException e) {
-            return 0;
+        // 霧効果（非常に短い時間の盲目）を適用
+        if (random.nextDouble() < profile.fogBlindnessChance) {
+            effects.potion(session, FOG_BLINDNESS);
         }
-    }
 
-    @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        // プレイヤーがサーバーに参加したときに距離カウンターをリセット
-        playerDistanceTraveled.put(event.getPlayer().getUniqueId(), 0.0);
+        // 深いレベルでは吐き気も
+        if (profile.fogNauseaChance > 0.0 && random.nextDouble() < profile.fogNauseaChance) {
+            effects.potion(session, FOG_NAUSEA);
+        }
     }
 
-    @EventHandler
-    public void onPlayerQuit(PlayerQuitEvent event) {
-        // プレイヤーがサーバーを離れたとき、カウンターを削除
-        playerDistanceTraveled.remove(event.getPlayer().getUniqueId());
+    // ワールドに対応するレベル（バックルームでなければ null）
+    // レベル数は少ないので、参照の同一性による線形探索が最も安い
+    private BackroomLevel levelOf(World world) {
+        for (BackroomLevel level : levels) {
+            if (level.world == world) {
+                return level;
+            }
+        }
+        return null;
     }
 
-    @EventHandler
-    public void onPlayerMove(PlayerMoveEvent event) {
-        Player player = event.getPlayer();
-        Location from = event.getFrom();
-        Location to = event.getTo();
-
-        if (to == null) return;
+    private boolean isInBackroom(Player player) {
+        return levelOf(player.getWorld()) != null;
+    }
 
-        // バックルーム内の移動処理
-        if (isInBackroom(player)) {
-            int level = getPlayerLevel(player);
-            World world = player.getWorld();
+    private int getPlayerLevel(Player player) {
+        BackroomLevel level = levelOf(player.getWorld());
+        return level == null ? 0 : level.level;
+    }
 
-            // 境界外にいるかチェック
-            if (to.getBlockX() < ROOM_MIN || to.getBlockX() > ROOM_MAX ||
-                    to.getBlockZ() < ROOM_MIN || to.getBlockZ() > ROOM_MAX) {
+    // プレイヤーのセッション（参加前や退出後の呼び出しでは null）
+    // セッションを作るのは参加イベントと有効化のときだけ。ここで作ると退出後のコールバックが
+    // 誰も解放しないセッションを登録してしまう
+    private BackroomSession sessionOf(Player player) {
+        return sessions.get(player.getEntityId());
+    }
 
-                // 範囲内のランダムな場所にテレポート
-                int randomX = random.nextInt(ROOM_MAX - ROOM_MIN) + ROOM_MIN;
-                int randomZ = random.nextInt(ROOM_MAX - ROOM_MIN) + ROOM_MIN;
-                int y = 65 + (level * FLOOR_HEIGHT); // レベル固有の高さ
+    private BackroomSession createSession(Player player) {
+        BackroomSession session = new BackroomSession(player.getUniqueId(), player.getEntityId());
+        session.player = player;
 
-                Location newLoc = new Location(world, randomX + 0.5, y, randomZ + 0.5);
-                player.teleport(newLoc);
-                player.sendMessage(ChatColor.RED + "【エラー】境界外移動検知。中央領域へ転送します。");
-                return;
-            }
+        sessions.put(session);
+        effectScheduler.add(session);
 
-            // 出口（エメラルドブロック）のチェック - パフォーマンス向上のためメモリに保存
-            Block block = world.getBlockAt(to.getBlockX(), to.getBlockY() - 1, to.getBlockZ());
+        // 保存されていた状態を戻す（参加前に非同期で読んである）
+        // 起動直後で索引の読み込みが終わっていなければ、ここでは待たずに、終わったときにプレイヤーのスレッドで戻す
+        if (store.isLoaded()) {
+            restoreState(session, store.take(player.getUniqueId()));
+        } else {
+            store.whenLoaded(() -> RegionSupport.runFor(this, player, () -> {
+                if (session.player == player) {
+                    restoreState(session, store.take(player.getUniqueId()));
+                }
+            }));
+        }
+        return session;
+    }
 
-            // 出口の位置をキャッシュしてチェックを繰り返さないようにする
-            Location blockLoc = block.getLocation();
-            if (exitLocations.contains(blockLoc)) {
-                handleExit(player, level);
-                return;
+    // プレイヤーを所有するスレッドで呼ぶ
+    // 今いるワールドのレベルを正とし、バックルームにいたはずなのに外にいれば（使い捨てワールドが作り直されて
+    // 初期スポーンに置かれたときなど）、保存されていたレベルへ戻す
+    private void restoreState(BackroomSession session, PlayerStore.State state) {
+        if (state != null) {
+            session.level = state.level;
+            session.distanceTraveled = state.distance;
+            session.sanity = state.sanity;
+        }
+        session.stateLoaded = true;
+
+        Player player = session.player;
+        BackroomLevel current = levelOf(player.getWorld());
+        if (current != null) {
+            if (session.level != current.level) {
+                session.level = current.level;
+                store.capture(session);
             }
-
-            if (block.getType() == Material.EMERALD_BLOCK) {
-                exitLocations.add(blockLoc);
-                handleExit(player, level);
+        } else if (session.level >= 0) {
+            int level = Math.min(session.level, MAX_LEVELS - 1);
+            if (teleportToBackroom(player, level)) {
+                effects.message(session, ChatColor.YELLOW + "【位置情報】前回のバックルームレベル " + level + " に戻ります...");
             }
+        }
+    }
 
-            // 特殊な場所：次のレベルへの階段（最大深度でない場合）
-            if (level < MAX_LEVELS - 1 && block.getType() == Material.MOSSY_COBBLESTONE) {
-                int newLevel = level + 1;
-
-                // 警告を表示
-                player.sendMessage(ChatColor.DARK_RED + "【警告】異常な引力感知。");
-                player.sendMessage(ChatColor.RED + "【システム】これ以上深く進むことは推奨されません。");
-
-                // 次のレベルにテレポート
-                World nextWorld = Bukkit.getWorld("backroom_level_" + newLevel);
-                if (nextWorld == null) {
-                    nextWorld = createBackroomWorld(newLevel);
-                }
-
-                // 次のレベルのランダムな場所
-                int x = random.nextInt(100) - 50;
-                int z = random.nextInt(100) - 50;
-                int y = 65 + (newLevel * FLOOR_HEIGHT);
-
-                // 目的地に空気があることを確認
-                Location destination = new Location(nextWorld, x, y, z);
-                player.teleport(destination);
-
-                // 効果を適用
-                player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 60, 0));
-                player.addPotionEffect(new PotionEffect(PotionEffectType.NAUSEA, 100, 0));
-                player.playSound(player.getLocation(), Sound.ENTITY_ENDERMAN_TELEPORT, 1.0f, 0.5f);
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        // 保存された状態を参加前に読む（非同期スレッド。起動直後は索引の読み込みを待つ）
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            store.preload(event.getUniqueId());
+        }
+    }
 
-                // メッセージ
-                player.sendMessage(ChatColor.DARK_RED + "【位置情報】バックルームレベル " + newLevel + " に降下しました");
-                player.sendMessage(ChatColor.RED + "【環境センサー】空気密度が増加しています...");
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // プレイヤーがサーバーに参加したときにセッションを作成（保存された状態があれば引き継ぐ）
+        // 既にあれば（有効化のときに作ったもの）それを使い続ける
+        Player player = event.getPlayer();
+        if (sessionOf(player) == null) {
+            createSession(player);
+        }
+    }
 
-                // プレイヤーのレベルを更新
-                playerLevels.put(player.getName(), newLevel);
-            }
-        } else {
-            // 通常世界での移動を追跡
-            UUID playerId = player.getUniqueId();
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // プレイヤーがサーバーを離れたとき、セッションを解放
+        BackroomSession session = sessions.remove(event.getPlayer().getEntityId());
+        store.forget(event.getPlayer().getUniqueId());
+        if (stalkerEngine != null) {
+            stalkerEngine.forget(event.getPlayer().getUniqueId());
+        }
+        if (session != null) {
+            store.capture(session);
+            effectScheduler.remove(session);
+            session.player = null;
+        }
+    }
 
-            // XZ平面上の距離のみを計算（高さ変化を無視）
-            double dx = to.getX() - from.getX();
-            double dz = to.getZ() - from.getZ();
-            double distance = Math.sqrt(dx*dx + dz*dz);
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        // 転送以外（/tp や死亡後のリスポーンなど）でバックルームを出入りしたときも、保存するレベルを今のワールドに合わせる
+        Player player = event.getPlayer();
+        BackroomSession session = sessionOf(player);
+        if (session == null) {
+            return;
+        }
+        BackroomLevel level = levelOf(player.getWorld());
+        int current = level == null ? -1 : level.level;
+        if (session.level != current) {
+            session.level = current;
+            store.capture(session);
+        }
+    }
 
-            // すべての移動をカウント（距離制限を撤廃）
-            double totalDistance = playerDistanceTraveled.getOrDefault(playerId, 0.0) + distance;
-            playerDistanceTraveled.put(playerId, totalDistance);
+    @EventHandler
+    public void onPlayerMove(PlayerMoveEvent event) {
+        Location to = event.getTo();
+        if (to == null) return;
 
-            // 警告メッセージを10ブロクから表示
-            if (totalDistance >= 10.0 && totalDistance < 11.0) {
-                player.sendMessage(ChatColor.GRAY + "【注意】現実の不安定性が増加しています... (" + String.format("%.1f", totalDistance) + "/15.0)");
-            }
+        moveHandler.onMove(event.getPlayer(), event.getFrom(), to);
+    }
 
-            // 15ブロック歩いたらバックルームに送る（20→15に変更）
-            if (totalDistance >= 15.0) {
-                // カウンターをリセット
-                playerDistanceTraveled.put(playerId, 0.0);
-
-                // プレイヤーがオペレーターでない場合のみ（オプション）
-                if (!player.isOp()) {
-                    // 88%の確率でバックルームに送る
-                    if (random.nextDouble() < 0.88) {
-                        // レベル0のバックルームに送る
-                        teleportToBackroom(player, 0);
-
-                        player.sendMessage(ChatColor.DARK_RED + "【異常事象発生】空間歪曲検知。現実層からのノークリップが発生しました。");
-                        player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 60, 0));
-                        player.addPotionEffect(new PotionEffect(PotionEffectType.NAUSEA, 80, 0));
-                    }
-                }
+    // 壁の中や出口・階段の上に出ないように、レイアウトから立てる列を選ぶ（チャンクを読まない）
+    // 見つからなければ最後に試した列（壁の割合は2割程度なので、ほぼ最初の数回で見つかる）
+    private Location spawnPoint(BackroomLevel level, World world, int centerX, int centerZ, int range) {
+        int x = centerX;
+        int z = centerZ;
+        for (int attempt = 0; attempt < SPAWN_ATTEMPTS; attempt++) {
+            x = centerX + random.nextInt(2 * range + 1) - range;
+            z = centerZ + random.nextInt(2 * range + 1) - range;
+            if (level.oracle.isStandable(x, z)) {
+                break;
             }
         }
+        return new Location(world, x + 0.5, level.config.baseY + 1, z + 0.5);
     }
 
-    private void teleportToBackroom(Player player, int level) {
+    // 移動を開始したら true（既に移動中、またはワールドが利用できなければ false）
+    private boolean teleportToBackroom(Player player, int level) {
         // バックルームのワールドを取得または作成
-        String worldName = "backroom_level_" + level;
-        World backroomWorld = Bukkit.getWorld(worldName);
+        World backroomWorld = worldFor(level);
         if (backroomWorld == null) {
-            backroomWorld = createBackroomWorld(level);
+            player.sendMessage(ChatColor.RED + "【エラー】バックルームレベル " + level + " は利用できません");
+            return false;
         }
 
-        // ランダムな場所にテレポート
-        int x = random.nextInt(100) - 50; // 初期スポーン用の小さな範囲
-        int z = random.nextInt(100) - 50;
-        int y = 65 + (level * FLOOR_HEIGHT); // レベル固有の高さ
-
-        Location spawnLoc = new Location(backroomWorld, x + 0.5, y, z + 0.5);
-        player.teleport(spawnLoc);
-
-        // プレイヤーレベルを追跡
-        playerLevels.put(player.getName(), level);
+        // ランダムな場所にテレポート（初期スポーン用の小さな範囲）
+        BackroomSession session = sessionOf(player);
+        if (session == null) {
+            return false;
+        }
+        Location spawnLoc = spawnPoint(levels[level], backroomWorld, 0, 0, 50);
+        return transfers.transfer(player, session, spawnLoc, arrived -> {
+            // プレイヤーレベルを追跡
+            session.level = level;
+            store.capture(session);
 
-        // 効果
-        player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 60, 0));
-        player.addPotionEffect(new PotionEffect(PotionEffectType.NAUSEA, 80, 0));
-        player.playSound(player.getLocation(), Sound.ENTITY_ELDER_GUARDIAN_AMBIENT, 0.5f, 0.5f);
+            // 効果
+            effects.potion(session, NOCLIP_BLINDNESS);
+            effects.potion(session, NOCLIP_NAUSEA);
+            effects.sound(session, Sound.ENTITY_ELDER_GUARDIAN_AMBIENT, 0.5f, 0.5f);
 
-        // メッセージ
-        player.sendMessage(ChatColor.YELLOW + "【転送完了】あなたは現実からノークリップしました...");
-        if (level == 0) {
-            player.sendMessage(ChatColor.GOLD + "【システムメッセージ】脱出するにはエメラルドブロックを見つけてください。");
-        } else {
-            player.sendMessage(ChatColor.GOLD + "【システムメッセージ】上層または下層への経路を発見してください。");
-            player.sendMessage(ChatColor.RED + "【位置情報】現在レベル " + level + " に滞在中。");
-        }
+            // メッセージ
+            effects.message(session, ChatColor.YELLOW + "【転送完了】あなたは現実からノークリップしました...");
+            if (level == 0) {
+                effects.message(session, ChatColor.GOLD + "【システムメッセージ】脱出するにはエメラルドブロックを見つけてください。");
+            } else {
+                effects.message(session, ChatColor.GOLD + "【システムメッセージ】上層または下層への経路を発見してください。");
+                effects.message(session, ChatColor.RED + "【位置情報】現在レベル " + level + " に滞在中。");
+            }
+        });
     }
 
-    private void handleExit(Player player, int level) {
+    private void handleExit(Player player, BackroomSession session, int level) {
         // レベルに基づいて異なる結果
         switch (level) {
             case 0:
@@ -503,49 +789,96 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
                 World mainWorld = Bukkit.getWorld("world");
                 if (mainWorld == null) mainWorld = Bukkit.getWorlds().get(0);
 
-                player.sendMessage(ChatColor.GREEN + "【異常検知】境界領域に亀裂が発生。現実層へのリンクを確立中...");
-                player.teleport(mainWorld.getSpawnLocation());
+                boolean started = transfers.transfer(player, session, mainWorld.getSpawnLocation(), arrived -> {
+                    // 効果をクリア
+                    effects.clearPotions(session);
 
-                // 効果をクリア
-                for (PotionEffect effect : player.getActivePotionEffects()) {
-                    player.removePotionEffect(effect.getType());
-                }
+                    // 報酬
+                    effects.sound(session, Sound.UI_TOAST_CHALLENGE_COMPLETE, 1.0f, 1.0f);
+                    effects.message(session, ChatColor.GOLD + "【転送完了】バックルーム層との接続が切断されました。現実への再同期を確認。");
 
-                // 報酬
-                player.playSound(player.getLocation(), Sound.UI_TOAST_CHALLENGE_COMPLETE, 1.0f, 1.0f);
-                player.sendMessage(ChatColor.GOLD + "【転送完了】バックルーム層との接続が切断されました。現実への再同期を確認。");
-
-                // 距離カウンターをリセット
-                playerDistanceTraveled.put(player.getUniqueId(), 0.0);
+                    // 距離カウンターと正気度をリセット（現実に戻ったので次回の参加時にバックルームへ戻さない）
+                    session.level = -1;
+                    session.distanceTraveled = 0.0;
+                    if (sanityEngine != null) {
+                        sanityEngine.reset(session);
+                    }
+                    store.capture(session);
+                });
+                if (started) {
+                    countTransition("exit", level);
+                    effects.message(session, ChatColor.GREEN + "【異常検知】境界領域に亀裂が発生。現実層へのリンクを確立中...");
+                }
                 break;
 
             default:
                 // 深いレベル：1レベル上に移動
                 int newLevel = level - 1;
-                World upperWorld = Bukkit.getWorld("backroom_level_" + newLevel);
-
-                player.sendMessage(ChatColor.YELLOW + "【発見】上層への経路を確認しました...");
+                World upperWorld = worldFor(newLevel);
+                if (upperWorld == null) {
+                    return;
+                }
 
                 // 上層のランダムな場所
-                int x = random.nextInt(200) - 100;
-                int z = random.nextInt(200) - 100;
-                int y = 65 + (newLevel * FLOOR_HEIGHT);
+                Location destination = spawnPoint(levels[newLevel], upperWorld, 0, 0, 100);
+                boolean climbing = transfers.transfer(player, session, destination, arrived -> {
+                    // 効果
+                    effects.potion(session, CLIMB_BLINDNESS);
+                    effects.sound(session, Sound.BLOCK_PORTAL_TRAVEL, 0.5f, 1.0f);
+
+                    effects.message(session, ChatColor.YELLOW + "【位置情報】バックルームレベル " + newLevel + " に上昇しました");
+
+                    // プレイヤーの追跡レベルを更新
+                    session.level = newLevel;
+                    store.capture(session);
+                });
+                if (climbing) {
+                    countTransition("exit", level);
+                    effects.message(session, ChatColor.YELLOW + "【発見】上層への経路を確認しました...");
+                }
+                break;
+        }
+    }
 
-                Location destination = new Location(upperWorld, x, y, z);
-                player.teleport(destination);
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        BackroomLevel level = levelOf(event.getWorld());
+        if (level == null) return;
 
-                // 効果
-                player.addPotionEffect(new PotionEffect(PotionEffectType.BLINDNESS, 30, 0));
-                player.playSound(player.getLocation(), Sound.BLOCK_PORTAL_TRAVEL, 0.5f, 1.0f);
+        // 生成時に記録した照明位置を登録（読み込まれたチャンクだけを索引に持つ）
+        level.lightIndex.load(event.getChunk().getX(), event.getChunk().getZ());
+    }
 
-                player.sendMessage(ChatColor.YELLOW + "【位置情報】バックルームレベル " + newLevel + " に上昇しました");
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        BackroomLevel level = levelOf(event.getWorld());
+        if (level == null) return;
 
-                // プレイヤーの追跡レベルを更新
-                playerLevels.put(player.getName(), newLevel);
-                break;
+        // アンロードされたチャンクの照明インデックスを破棄（再読み込み時に再構築）
+        level.lightIndex.remove(event.getChunk().getX(), event.getChunk().getZ());
+
+        // 使い捨てモード：チャンクは種から同じものを再生成できるので書き出さない
+        if (ephemeralWorlds) {
+            event.setSaveChunk(false);
         }
     }
 
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        BackroomLevel level = levelOf(event.getWorld());
+        if (level == null) return;
+
+        // アンロードされたワールドの出口キャッシュと点滅の状態を破棄
+        level.exitIndex.clear();
+        if (flickerEngine != null) {
+            flickerEngine.forgetWorld(event.getWorld());
+        }
+        if (stalkerEngine != null) {
+            stalkerEngine.forgetLevel(level);
+        }
+        level.world = null;
+    }
+
     @EventHandler
     public void onEntityDamage(EntityDamageEvent event) {
         if (!(event.getEntity() instanceof Player)) return;
@@ -567,7 +900,78 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
         // クリエイティブモード以外ではブロック破壊を防止
         if (player.getGameMode() != GameMode.CREATIVE) {
             event.setCancelled(true);
-            player.sendMessage(ChatColor.RED + "【エラー】バックルーム環境の改変は許可されていません。");
+            BackroomSession session = sessionOf(player);
+            if (session != null) {
+                effects.message(session, ChatColor.RED + "【エラー】バックルーム環境の改変は許可されていません。");
+            }
+        }
+    }
+
+    // レベルごとの移動の回数（移動を開始したときだけ数える）
+    private void countTransition(String kind, int level) {
+        metrics.counter("transition." + kind + ".level" + level).increment();
+    }
+
+    // 移動の判定から呼ばれるレベル間の移動
+    private class BackroomTransitions implements MoveHandler.Transitions {
+        @Override
+        public void outOfBounds(Player player, BackroomSession session, BackroomLevel level) {
+            // 範囲内のランダムな場所にテレポート
+            Location newLoc = spawnPoint(level, level.world, (ROOM_MIN + ROOM_MAX) / 2, (ROOM_MIN + ROOM_MAX) / 2,
+                    (ROOM_MAX - ROOM_MIN) / 2);
+            if (transfers.transfer(player, session, newLoc, null)) {
+                countTransition("out_of_bounds", level.level);
+                effects.message(session, ChatColor.RED + "【エラー】境界外移動検知。中央領域へ転送します。");
+            }
+        }
+
+        @Override
+        public void exit(Player player, BackroomSession session, BackroomLevel level) {
+            handleExit(player, session, level.level);
+        }
+
+        @Override
+        public void descend(Player player, BackroomSession session, BackroomLevel level) {
+            int newLevel = level.level + 1;
+
+            // 次のレベルにテレポート
+            World nextWorld = worldFor(newLevel);
+            if (nextWorld == null) {
+                return;
+            }
+
+            // 次のレベルのランダムな場所（壁の中ではない床の上）
+            Location destination = spawnPoint(levels[newLevel], nextWorld, 0, 0, 50);
+            boolean started = transfers.transfer(player, session, destination, arrived -> {
+                // 効果を適用
+                effects.potion(session, NOCLIP_BLINDNESS);
+                effects.potion(session, DESCEND_NAUSEA);
+                effects.sound(session, Sound.ENTITY_ENDERMAN_TELEPORT, 1.0f, 0.5f);
+
+                // メッセージ
+                effects.message(session, ChatColor.DARK_RED + "【位置情報】バックルームレベル " + newLevel + " に降下しました");
+                effects.message(session, ChatColor.RED + "【環境センサー】空気密度が増加しています...");
+
+                // プレイヤーのレベルを更新
+                session.level = newLevel;
+                store.capture(session);
+            });
+
+            // 警告を表示（移動を開始したときだけ）
+            if (started) {
+                countTransition("descend", level.level);
+                effects.message(session, ChatColor.DARK_RED + "【警告】異常な引力感知。");
+                effects.message(session, ChatColor.RED + "【システム】これ以上深く進むことは推奨されません。");
+            }
+        }
+
+        @Override
+        public void noclip(Player player, BackroomSession session) {
+            // レベル0のバックルームに送る（盲目と吐き気は到着時に teleportToBackroom が与える）
+            if (teleportToBackroom(player, 0)) {
+                metrics.counter("transition.noclip").increment();
+                effects.message(session, ChatColor.DARK_RED + "【異常事象発生】空間歪曲検知。現実層からのノークリップが発生しました。");
+            }
         }
     }
 
@@ -575,6 +979,58 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
     private class BackroomCommand implements CommandExecutor {
         @Override
         public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+            // 統計の表示（コンソールからも使用可能）
+            if (args.length > 0 && args[0].equalsIgnoreCase("stats")) {
+                if (!sender.hasPermission("backroom.admin.stats")) {
+                    sender.sendMessage(ChatColor.RED + "【エラー】このコマンドを使用する権限がありません");
+                    return true;
+                }
+                if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+                    metrics.reset();
+                    sender.sendMessage(ChatColor.YELLOW + "【統計】記録をリセットしました");
+                    return true;
+                }
+                sender.sendMessage(ChatColor.GOLD + "【統計】バックルーム環境効果");
+                for (String line : effectScheduler.describe()) {
+                    sender.sendMessage(ChatColor.GRAY + line);
+                }
+                if (sanityEngine != null) {
+                    for (String line : sanityEngine.describe()) {
+                        sender.sendMessage(ChatColor.GRAY + line);
+                    }
+                }
+                if (stalkerEngine != null) {
+                    for (String line : stalkerEngine.describe()) {
+                        sender.sendMessage(ChatColor.GRAY + line);
+                    }
+                }
+                for (BackroomLevel level : levels) {
+                    sender.sendMessage(ChatColor.GRAY + String.format("照明インデックス レベル%d: %d チャンク（読み込み待ち %d）",
+                            level.level, level.lightIndex.size(), level.lightIndex.pendingSize()));
+                }
+                sender.sendMessage(ChatColor.GOLD + "【統計】処理時間と回数");
+                if (!metrics.isEnabled()) {
+                    sender.sendMessage(ChatColor.GRAY + "記録は無効です（config.yml の metrics_enabled: true で有効）");
+                    return true;
+                }
+                for (String line : metrics.describe()) {
+                    sender.sendMessage(ChatColor.GRAY + line);
+                }
+                return true;
+            }
+
+            // チャンクの事前生成（コンソールからも使用可能）
+            if (args.length > 0 && args[0].equalsIgnoreCase("pregen")) {
+                handlePregenCommand(sender, args);
+                return true;
+            }
+
+            // 最も近い出口・階段の位置（コンソールからも使用可能）
+            if (args.length > 0 && args[0].equalsIgnoreCase("locate")) {
+                handleLocateCommand(sender, args);
+                return true;
+            }
+
             if (!(sender instanceof Player)) {
                 sender.sendMessage("このコマンドはプレイヤーのみ使用可能です");
                 return true;
@@ -638,195 +1094,41 @@ public class BagRoomPlugin extends JavaPlugin implements Listener {
             World mainWorld = Bukkit.getWorld("world");
             if (mainWorld == null) mainWorld = Bukkit.getWorlds().get(0);
 
-            target.teleport(mainWorld.getSpawnLocation());
+            // 対象は別のリージョンにいることがあるので、対象のスレッドで移動を開始する
+            boolean self = target == player;
+            Player exiled = target;
+            Location spawn = mainWorld.getSpawnLocation();
+            RegionSupport.runFor(BagRoomPlugin.this, exiled, () -> {
+                BackroomSession session = sessionOf(exiled);
+                if (session == null) {
+                    return; // 移動を始める前に退出した
+                }
+                transfers.transfer(exiled, session, spawn, arrived -> {
+                    // 効果をクリア
+                    effects.clearPotions(session);
 
-            // 効果をクリア
-            for (PotionEffect effect : target.getActivePotionEffects()) {
-                target.removePotionEffect(effect.getType());
-            }
+                    if (!self) {
+                        effects.message(session, ChatColor.GREEN + "【システム通知】あなたは管理者によってバックルームから強制的に排除されました");
+                    }
+
+                    // 距離カウンターと正気度をリセット（現実に戻ったので次回の参加時にバックルームへ戻さない）
+                    session.level = -1;
+                    session.distanceTraveled = 0.0;
+                    if (sanityEngine != null) {
+                        sanityEngine.reset(session);
+                    }
+                    store.capture(session);
+                });
+            });
 
             // メッセージ
-            if (target == player) {
+            if (self) {
                 player.sendMessage(ChatColor.GREEN + "【システム通知】あなたはバックルームから強制的に排除されました");
             } else {
                 player.sendMessage(ChatColor.GREEN + "【システム通知】" + target.getName() + "をバックルームから排除しました");
-                target.sendMessage(ChatColor.GREEN + "【システム通知】あなたは管理者によってバックルームから強制的に排除されました");
             }
 
-            // 距離カウンターをリセット
-            playerDistanceTraveled.put(target.getUniqueId(), 0.0);
-
             return true;
         }
     }
-
-    // バックルーム用カスタムワールドジェネレータ
-    private class BackroomGenerator extends ChunkGenerator {
-        private final int level;
-        private final SimplexOctaveGenerator noiseGenerator;
-
-        public BackroomGenerator(int level) {
-            this.level = level;
-            this.noiseGenerator = new SimplexOctaveGenerator(new Random(level * 31), 8);
-            this.noiseGenerator.setScale(0.01);
-        }
-
-        @Override
-        public void generateNoise(WorldInfo worldInfo, Random random, int chunkX, int chunkZ, ChunkData chunkData) {
-            int worldXStart = chunkX * 16;
-            int worldZStart = chunkZ * 16;
-            int baseY = 60 + (level * FLOOR_HEIGHT);
-            int wallHeight = WALL_HEIGHT;
-
-            // このレベルの素材を取得
-            Material floorMaterial = LEVEL_MATERIALS[level][0];
-            Material wallMaterial = LEVEL_MATERIALS[level][1];
-            Material ceilingMaterial = LEVEL_MATERIALS[level][2];
-            Material lightMaterial = LEVEL_MATERIALS[level][3];
-
-            // チャンク座標に基づく決定論的ランダム
-            long seed = (long) worldXStart * 341873911L + (long) worldZStart * 132897777L + level * 31;
-            Random chunkRandom = new Random(seed);
-
-            // 基本地形を生成
-            for (int x = 0; x < 16; x++) {
-                for (int z = 0; z < 16; z++) {
-                    int absX = worldXStart + x;
-                    int absZ = worldZStart + z;
-
-                    // 床と天井
-                    chunkData.setBlock(x, baseY, z, floorMaterial);
-                    chunkData.setBlock(x, baseY + wallHeight + 1, z, ceilingMaterial);
-
-                    // 深いレベルでの床のバリエーションを追加
-                    if (level > 0 && chunkRandom.nextDouble() < 0.05 * level) {
-                        // 損傷した床
-                        if (chunkRandom.nextDouble() < 0.5) {
-                            chunkData.setBlock(x, baseY, z, Material.YELLOW_CONCRETE_POWDER);
-                        }
-
-                        // 湿った床
-                        if (level == 2 && chunkRandom.nextDouble() < 0.03) {
-                            chunkData.setBlock(x, baseY, z, Material.WATER);
-                        }
-                    }
-
-                    // 迷路のようなパターンを作成するためにノイズを使用
-                    double noise1 = noiseGenerator.noise(absX, absZ, 0.5, 0.5, true);
-                    double noise2 = noiseGenerator.noise(absZ, absX, 0.5, 0.5, true);
-
-                    // ノイズに基づいて壁を作成
-                    boolean isWall = false;
-
-                    // レベルに基づくより複雑な壁パターン
-                    switch (level) {
-                        case 0:
-                            // レベル0：古典的なグリッドパターン
-                            if (Math.abs(absX % 8) < 1 || Math.abs(absZ % 8) < 1) {
-                                isWall = true;
-                            }
-
-                            // 壁に隙間を追加
-                            if (isWall && chunkRandom.nextDouble() < 0.15) {
-                                isWall = false;
-                            }
-                            break;
-
-                        case 1:
-                            // レベル1：よりカオスな壁
-                            if (Math.abs(absX % 7) < 1 || Math.abs(absZ % 7) < 1) {
-                                isWall = true;
-                            }
-
-                            // より多様なパターンを作成するためにノイズを使用
-                            if (noise1 > 0.65 || noise2 > 0.65) {
-                                isWall = !isWall;
-                            }
-
-                            // ランダムな壁のダメージ
-                            if (isWall && chunkRandom.nextDouble() < 0.3) {
-                                isWall = false;
-                            }
-                            break;
-
-                        case 2:
-                            // レベル2：ひどく劣化した構造
-                            if (Math.abs(absX % 6) < 1 || Math.abs(absZ % 6) < 1) {
-                                isWall = true;
-                            }
-
-                            // より多くのノイズの影響
-                            if ((noise1 > 0.6 && noise2 > 0.3) || (noise2 > 0.6 && noise1 > 0.3)) {
-                                isWall = !isWall;
-                            }
-
-                            // ランダムな破壊
-                            if (isWall && chunkRandom.nextDouble() < 0.4) {
-                                isWall = false;
-                            }
-                            break;
-                    }
-
-                    // 壁を作成
-                    if (isWall) {
-                        for (int y = 1; y <= wallHeight; y++) {
-                            chunkData.setBlock(x, baseY + y, z, wallMaterial);
-                        }
-                    } else {
-                        // 壁以外の空間に空気
-                        for (int y = 1; y <= wallHeight; y++) {
-                            chunkData.setBlock(x, baseY + y, z, Material.AIR);
-                        }
-                    }
-
-                    // 廊下の天井照明（壁ではない場所）
-                    if (!isWall && (
-                            (level == 0 && (absX % 8 == 4 && absZ % 8 == 4)) ||
-                                    (level == 1 && (absX % 7 == 3 && absZ % 7 == 3)) ||
-                                    (level == 2 && (absX % 6 == 3 && absZ % 6 == 3 && chunkRandom.nextDouble() < 0.7))
-                    )) {
-                        chunkData.setBlock(x, baseY + wallHeight + 1, z, lightMaterial);
-                    }
-
-                    // ランダムな出口（エメラルドブロック）
-                    if (!isWall && chunkRandom.nextDouble() < EXIT_CHANCE / (level + 1)) {
-                        chunkData.setBlock(x, baseY, z, Material.EMERALD_BLOCK);
-                    }
-
-                    // 下階への階段を追加（最大深度でない場合）
-                    if (level < MAX_LEVELS - 1 && !isWall && chunkRandom.nextDouble() < EXIT_CHANCE / 3) {
-                        chunkData.setBlock(x, baseY, z, Material.MOSSY_COBBLESTONE);
-                    }
-
-                    // レベル固有の装飾
-                    if (!isWall) {
-                        switch (level) {
-                            case 1:
-                                // 床の上の損傷した照明
-                                if (chunkRandom.nextDouble() < 0.005) {
-                                    chunkData.setBlock(x, baseY + 1, z, Material.REDSTONE_LAMP);
-                                }
-                                break;
-
-                            case 2:
-                                // 植生と腐敗
-                                if (chunkRandom.nextDouble() < 0.01) {
-                                    if (chunkRandom.nextBoolean()) {
-                                        chunkData.setBlock(x, baseY + 1, z, Material.BROWN_MUSHROOM);
-                                    } else {
-                                        chunkData.setBlock(x, baseY + 1, z, Material.COBWEB);
-                                    }
-                                }
-                                break;
-                        }
-                    }
-                }
-            }
-        }
-
-        @Override
-        public List<BlockPopulator> getDefaultPopulators(World world) {
-            return Collections.emptyList();
-        }
-    }
-}
\ No newline at end of file
+}
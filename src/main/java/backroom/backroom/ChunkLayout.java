@@ -0,0 +1,52 @@
+package backroom.backroom;
+
+import java.util.Arrays;
+
+// 1チャンク分（16×16列）の配置をビットマスクで表したもの
+// 1面は long 4つで、ビット番号は (x << 4) | z。x の1行（z方向16列）がちょうど16ビットになる
+final class ChunkLayout {
+
+    static final int WORDS = 4;
+
+    final long[] walls = new long[WORDS];
+    final long[] lights = new long[WORDS]; // 天井照明
+    final long[] exits = new long[WORDS];
+    final long[] stairs = new long[WORDS];
+    final long[] damagedFloor = new long[WORDS];
+    final long[] wetFloor = new long[WORDS];
+    final long[] decorations = new long[WORDS];
+    final byte[] decorationKinds = new byte[16 * 16]; // decorationMaterials の添字
+
+    void clear() {
+        Arrays.fill(walls, 0L);
+        Arrays.fill(lights, 0L);
+        Arrays.fill(exits, 0L);
+        Arrays.fill(stairs, 0L);
+        Arrays.fill(damagedFloor, 0L);
+        Arrays.fill(wetFloor, 0L);
+        Arrays.fill(decorations, 0L);
+    }
+
+    static int index(int x, int z) {
+        return (x << 4) | z;
+    }
+
+    // value は 0 か 1
+    static void set(long[] mask, int index, long value) {
+        mask[index >>> 6] |= value << index;
+    }
+
+    static boolean get(long[] mask, int index) {
+        return (mask[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // x 行に16ビットを重ねる（ビット z が列 (x, z)）
+    static void setRow(long[] mask, int x, int bits) {
+        mask[x >>> 2] |= (long) bits << ((x & 3) << 4);
+    }
+
+    // x 行の16ビット（ビット z が列 (x, z)）
+    static int row(long[] mask, int x) {
+        return (int) (mask[x >>> 2] >>> ((x & 3) << 4)) & 0xFFFF;
+    }
+}
@@ -0,0 +1,51 @@
+package backroom.backroom;
+
+// チャンクの周期的な骨組み（格子の線と天井照明の位置）のテンプレート（1レベルにつき1つ）
+// 格子は gridPeriod ごとに繰り返すので、チャンクの形は (chunkX mod 周期, chunkZ mod 周期) と座標の符号だけで決まる
+// （Java の剰余は負の座標で負になり、照明の位置の判定が変わるため符号も区別する）
+// 構築時にすべての形を LayoutOracle の規則で求めておき、生成中は読むだけ（スレッド間で共有できる）
+final class ChunkSkeleton {
+
+    private final int period;
+    // 形ごとに ChunkLayout.WORDS 個ずつ並べたマスク
+    final long[] grid; // 格子の線上の列（ノイズの反転と壁の隙間を適用する前の壁の候補）
+    final long[] lightSlots; // 天井照明を置ける列
+
+    ChunkSkeleton(LevelConfig config) {
+        this.period = config.gridPeriod;
+        int shapes = 4 * period * period;
+        this.grid = new long[shapes * ChunkLayout.WORDS];
+        this.lightSlots = new long[shapes * ChunkLayout.WORDS];
+
+        for (int phaseX = 0; phaseX < period; phaseX++) {
+            for (int phaseZ = 0; phaseZ < period; phaseZ++) {
+                // 形ごとの代表のチャンク（非負と負）
+                for (int chunkX : new int[]{phaseX, phaseX - period}) {
+                    for (int chunkZ : new int[]{phaseZ, phaseZ - period}) {
+                        int offset = offset(chunkX, chunkZ);
+                        for (int x = 0; x < 16; x++) {
+                            for (int z = 0; z < 16; z++) {
+                                int absX = chunkX * 16 + x;
+                                int absZ = chunkZ * 16 + z;
+                                int index = ChunkLayout.index(x, z);
+                                if (LayoutOracle.onGrid(config, absX, absZ)) {
+                                    grid[offset + (index >>> 6)] |= 1L << index;
+                                }
+                                if (LayoutOracle.lightSlot(config, absX, absZ)) {
+                                    lightSlots[offset + (index >>> 6)] |= 1L << index;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // チャンクの形のマスクの先頭（grid と lightSlots の添字）
+    int offset(int chunkX, int chunkZ) {
+        int shapeX = Math.floorMod(chunkX, period) * 2 + (chunkX < 0 ? 1 : 0);
+        int shapeZ = Math.floorMod(chunkZ, period) * 2 + (chunkZ < 0 ? 1 : 0);
+        return (shapeX * 2 * period + shapeZ) * ChunkLayout.WORDS;
+    }
+}
@@ -0,0 +1,36 @@
+package backroom.backroom;
+
+// 列座標から決定される状態を持たない乱数
+// 同じ (seed, x, z, salt) には常に同じ値を返すので、チャンクの生成順やスレッドに依存しない
+final class ColumnRandom {
+
+    private ColumnRandom() {
+    }
+
+    static long hash(long seed, int x, int z, int salt) {
+        long h = seed
+                ^ (x * 0x9E3779B97F4A7C15L)
+                ^ (z * 0xC2B2AE3D27D4EB4FL)
+                ^ (salt * 0x165667B19E3779F9L);
+        // SplitMix64 の最終混合
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    // [0, 1) の一様乱数
+    static double nextDouble(long seed, int x, int z, int salt) {
+        return (hash(seed, x, z, salt) >>> 11) * 0x1.0p-53;
+    }
+
+    // 1行の列（ビット i が列 (x, zStart + i)）のうち、乱数が chance 未満の列のビット
+    // 乱数は bits の立っている列でだけ引く（ループは立っているビットの数だけ回る）
+    static int below(long seed, int x, int zStart, int bits, int salt, double chance) {
+        int result = 0;
+        for (int rest = bits; rest != 0; rest &= rest - 1) {
+            int i = Integer.numberOfTrailingZeros(rest);
+            result |= (nextDouble(seed, x, zStart + i, salt) < chance ? 1 : 0) << i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,251 @@
+package backroom.backroom;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.potion.PotionEffect;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// プレイヤーに送るポーション効果・音・チャットを1ティック分ためて、まとめて送るキュー
+// 同じティックの同じ種類の効果は1つに（既に同等以上が効いていれば送らない）、同じ音（同じ高さ）は大きい方の音量で1回に、チャットは1パケットにまとめる
+// 1ティックにプレイヤーへ送るパケット数には上限があり、超えた効果とチャットは次のティックへ持ち越す（音は捨てる）
+// ためられる効果の種類と音の数にも上限があり、超えた分は捨てて回数を記録する
+// 追加と送信はそのプレイヤーを所有するスレッドで行う（Paper ではメインスレッド、Folia ではプレイヤーのリージョン）
+final class EffectQueue {
+
+    private static final int MAX_POTIONS = 8; // 1ティックにためる効果の種類の数（超えた種類は捨てる）
+    private static final int MAX_SOUNDS = 4; // 1ティックにためる音の数（超えた分は捨てる）
+
+    // プレイヤーごとの送信待ち（BackroomSession が持つ）
+    static final class Outbox {
+        private final PotionEffect[] potions = new PotionEffect[MAX_POTIONS];
+        private int potionCount;
+        private final Object[] sounds = new Object[MAX_SOUNDS]; // Sound またはサウンドキー
+        private final float[] volumes = new float[MAX_SOUNDS];
+        private final float[] pitches = new float[MAX_SOUNDS];
+        private int soundCount;
+        private final StringBuilder chat = new StringBuilder();
+        private boolean clearPotions;
+        private boolean scheduled; // 送信が予約済みか
+
+        private boolean isEmpty() {
+            return potionCount == 0 && soundCount == 0 && chat.length() == 0 && !clearPotions;
+        }
+
+        private void reset() {
+            Arrays.fill(potions, null);
+            potionCount = 0;
+            Arrays.fill(sounds, null);
+            soundCount = 0;
+            chat.setLength(0);
+            clearPotions = false;
+        }
+    }
+
+    private final Plugin plugin;
+    private final int packetBudget; // 1ティックあたりのプレイヤーごとのパケット数の上限
+    private final ArrayDeque<BackroomSession> dirty = new ArrayDeque<>(); // 送信待ちのあるプレイヤー（Paper のみ）
+    private final Metrics.Counter sentPackets;
+    private final Metrics.Counter coalesced; // まとめた・重複で送らなかった数
+    private final Metrics.Counter deferred; // 上限で次のティックへ持ち越したティック数
+    private final Metrics.Counter droppedSounds;
+    private final Metrics.Counter droppedPotions; // 種類の上限を超えて捨てた効果
+
+    EffectQueue(Plugin plugin, int packetBudget, Metrics metrics) {
+        this.plugin = plugin;
+        this.packetBudget = Math.max(1, packetBudget);
+        this.sentPackets = metrics.counter("effects.packets");
+        this.coalesced = metrics.counter("effects.coalesced");
+        this.deferred = metrics.counter("effects.deferred");
+        this.droppedSounds = metrics.counter("effects.dropped_sounds");
+        this.droppedPotions = metrics.counter("effects.dropped_potions");
+    }
+
+    // ポーション効果（インスタンスは呼び出し側の定数を使い回す）
+    // 同じ種類が既にたまっていれば、長い方（強い方）だけを残す
+    void potion(BackroomSession session, PotionEffect effect) {
+        Outbox outbox = session.effects;
+        for (int i = 0; i < outbox.potionCount; i++) {
+            PotionEffect queued = outbox.potions[i];
+            if (queued.getType() == effect.getType()) {
+                if (!covers(queued, effect)) {
+                    outbox.potions[i] = effect;
+                }
+                coalesced.increment();
+                return;
+            }
+        }
+        if (outbox.potionCount == MAX_POTIONS) {
+            droppedPotions.increment();
+            return;
+        }
+        outbox.potions[outbox.potionCount++] = effect;
+        schedule(session);
+    }
+
+    void sound(BackroomSession session, Sound sound, float volume, float pitch) {
+        queueSound(session, sound, volume, pitch);
+    }
+
+    void sound(BackroomSession session, String key, float volume, float pitch) {
+        queueSound(session, key, volume, pitch);
+    }
+
+    // チャットの1行（同じティックの行は改行でつないで1パケットで送る）
+    void message(BackroomSession session, String line) {
+        Outbox outbox = session.effects;
+        if (outbox.chat.length() > 0) {
+            outbox.chat.append('\n');
+            coalesced.increment();
+        }
+        outbox.chat.append(line);
+        schedule(session);
+    }
+
+    // 効いている効果をすべて消す（それまでにたまった効果も捨てる）
+    void clearPotions(BackroomSession session) {
+        Outbox outbox = session.effects;
+        Arrays.fill(outbox.potions, null);
+        outbox.potionCount = 0;
+        outbox.clearPotions = true;
+        schedule(session);
+    }
+
+    // 効果スケジューラから毎ティック呼ばれる（Paper のみ。このティックまでにたまった分だけを送る）
+    void tick() {
+        for (int remaining = dirty.size(); remaining > 0; remaining--) {
+            BackroomSession session = dirty.poll();
+            session.effects.scheduled = false;
+            flush(session);
+        }
+    }
+
+    // 同じ音でも高さが違えば別の音として送る（高さで意味を変えている呼び出しがある）
+    private void queueSound(BackroomSession session, Object sound, float volume, float pitch) {
+        Outbox outbox = session.effects;
+        for (int i = 0; i < outbox.soundCount; i++) {
+            if (outbox.sounds[i].equals(sound) && outbox.pitches[i] == pitch) {
+                outbox.volumes[i] = Math.max(outbox.volumes[i], volume);
+                coalesced.increment();
+                return;
+            }
+        }
+        if (outbox.soundCount == MAX_SOUNDS) {
+            droppedSounds.increment();
+            return;
+        }
+        outbox.sounds[outbox.soundCount] = sound;
+        outbox.volumes[outbox.soundCount] = volume;
+        outbox.pitches[outbox.soundCount] = pitch;
+        outbox.soundCount++;
+        schedule(session);
+    }
+
+    private void schedule(BackroomSession session) {
+        Outbox outbox = session.effects;
+        if (outbox.scheduled) {
+            return;
+        }
+        Player player = session.player;
+        if (player == null) {
+            outbox.reset();
+            return;
+        }
+        outbox.scheduled = true;
+        if (RegionSupport.FOLIA) {
+            // 次のティックにプレイヤーのリージョンで送る（プレイヤーが消えたら予約ごと捨てる）
+            ScheduledTask task = player.getScheduler().run(plugin, scheduled -> {
+                outbox.scheduled = false;
+                flush(session);
+            }, () -> {
+                outbox.scheduled = false;
+                outbox.reset();
+            });
+            if (task == null) {
+                outbox.scheduled = false;
+                outbox.reset();
+            }
+        } else {
+            dirty.add(session);
+        }
+    }
+
+    private void flush(BackroomSession session) {
+        Outbox outbox = session.effects;
+        Player player = session.player;
+        if (player == null || !player.isOnline()) {
+            outbox.reset();
+            return;
+        }
+        int budget = packetBudget;
+
+        // 効果の全消去（効いている効果1つにつき1パケット）
+        if (outbox.clearPotions) {
+            budget -= player.getActivePotionEffects().size();
+            player.clearActivePotionEffects();
+            outbox.clearPotions = false;
+        }
+
+        // チャットはまとめて1パケット
+        if (outbox.chat.length() > 0 && budget > 0) {
+            player.sendMessage(LegacyComponentSerializer.legacySection().deserialize(outbox.chat.toString()));
+            outbox.chat.setLength(0);
+            budget--;
+            sentPackets.increment();
+        }
+
+        // 同等以上が既に効いている効果は送らない
+        int kept = 0;
+        for (int i = 0; i < outbox.potionCount; i++) {
+            PotionEffect effect = outbox.potions[i];
+            PotionEffect active = player.getPotionEffect(effect.getType());
+            if (active != null && covers(active, effect)) {
+                coalesced.increment();
+            } else if (budget > 0) {
+                player.addPotionEffect(effect);
+                budget--;
+                sentPackets.increment();
+            } else {
+                outbox.potions[kept++] = effect;
+            }
+        }
+        for (int i = kept; i < outbox.potionCount; i++) {
+            outbox.potions[i] = null;
+        }
+        outbox.potionCount = kept;
+
+        // 音は遅れて鳴っても意味がないので、上限を超えた分は捨てる
+        for (int i = 0; i < outbox.soundCount; i++) {
+            if (budget > 0) {
+                Object sound = outbox.sounds[i];
+                if (sound instanceof Sound) {
+                    player.playSound(player.getLocation(), (Sound) sound, outbox.volumes[i], outbox.pitches[i]);
+                } else {
+                    player.playSound(player.getLocation(), (String) sound, outbox.volumes[i], outbox.pitches[i]);
+                }
+                budget--;
+                sentPackets.increment();
+            } else {
+                droppedSounds.increment();
+            }
+            outbox.sounds[i] = null;
+        }
+        outbox.soundCount = 0;
+
+        // 送りきれなかった分は次のティックへ
+        if (!outbox.isEmpty()) {
+            deferred.increment();
+            schedule(session);
+        }
+    }
+
+    // a が効いていれば b を足しても変わらないか（強さが同じ以上で、残り時間が同じ以上）
+    private static boolean covers(PotionEffect a, PotionEffect b) {
+        return a.getAmplifier() >= b.getAmplifier()
+                && (a.isInfinite() || a.getDuration() >= b.getDuration());
+    }
+}
@@ -0,0 +1,200 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+// 環境効果（環境音・霧・点滅）をまとめて実行するタイムホイール
+// プレイヤーを WHEEL_SIZE 個のスロットに振り分け、毎ティック1スロット分だけを処理する
+// 全員の処理が同じティックに集中しないので、効果の頻度を保ったままティック時間が平らになる
+// Folia では1つのタスクから全員を触れないため、スロットをプレイヤーごとのエンティティタスクの開始遅延として使う
+final class EffectScheduler {
+
+    static final int WHEEL_SIZE = 20; // 1周 = 1秒
+
+    // プレイヤーごとに周期的に実行する効果
+    interface PlayerEffect {
+        void run(Player player, BackroomLevel level);
+    }
+
+    private static final class Registration {
+        final PlayerEffect effect;
+        final int period; // ティック（WHEEL_SIZE の倍数）
+        final Metrics.Histogram time; // 1回の実行時間
+
+        Registration(PlayerEffect effect, int period, Metrics.Histogram time) {
+            this.effect = effect;
+            this.period = period;
+            this.time = time;
+        }
+    }
+
+    private final Plugin plugin;
+    private final Function<World, BackroomLevel> levelResolver;
+    private final long budgetNanos; // 1ティックあたりの処理時間の上限
+    private final Metrics metrics;
+    private final List<Registration> effects = new ArrayList<>();
+    private final List<Runnable> tickers = new ArrayList<>(); // 毎ティック呼ぶ処理（点滅の消灯・復旧など）
+
+    @SuppressWarnings("unchecked")
+    private final List<BackroomSession>[] buckets = new List[WHEEL_SIZE];
+    private final ArrayDeque<BackroomSession> pending = new ArrayDeque<>();
+    private int nextSlot; // 新しいプレイヤーを入れるスロット（順番に割り当てて均等にする）
+    private long tick;
+
+    // 統計（メインスレッドのみ）
+    private long slices;
+    private long totalSliceNanos;
+    private long maxSliceNanos;
+    private long processedSessions;
+    private long budgetHits;
+
+    EffectScheduler(Plugin plugin, Function<World, BackroomLevel> levelResolver, long budgetNanos, Metrics metrics) {
+        this.plugin = plugin;
+        this.levelResolver = levelResolver;
+        this.budgetNanos = budgetNanos;
+        this.metrics = metrics;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+    }
+
+    // 効果を登録する。周期はホイール1周の倍数に切り上げる（名前は統計の表示用）
+    void register(String name, PlayerEffect effect, int periodTicks) {
+        int period = Math.max(WHEEL_SIZE, (periodTicks + WHEEL_SIZE - 1) / WHEEL_SIZE * WHEEL_SIZE);
+        effects.add(new Registration(effect, period, metrics.histogram("effect." + name)));
+    }
+
+    void addTicker(Runnable ticker) {
+        tickers.add(ticker);
+    }
+
+    void start() {
+        Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, task -> tick(), 1, 1);
+    }
+
+    // Folia では参加イベントが各リージョンのスレッドから同時に来るので、スロットの割り当ては同期する
+    synchronized void add(BackroomSession session) {
+        session.effectCountdowns = new int[effects.size()];
+        for (int i = 0; i < effects.size(); i++) {
+            session.effectCountdowns[i] = effects.get(i).period;
+        }
+        session.wheelSlot = nextSlot;
+        nextSlot = (nextSlot + 1) % WHEEL_SIZE;
+        buckets[session.wheelSlot].add(session);
+
+        if (RegionSupport.FOLIA) {
+            // プレイヤーのリージョンのスレッドで1周ごとに実行（予算はリージョンごとのティックに任せる）
+            session.effectTask = session.player.getScheduler().runAtFixedRate(plugin,
+                    task -> runEffects(session), null, session.wheelSlot + 1, WHEEL_SIZE);
+        }
+    }
+
+    synchronized void remove(BackroomSession session) {
+        if (session.wheelSlot >= 0) {
+            buckets[session.wheelSlot].remove(session);
+            session.wheelSlot = -1;
+        }
+        if (session.effectTask != null) {
+            session.effectTask.cancel();
+            session.effectTask = null;
+        }
+        pending.remove(session);
+    }
+
+    private void tick() {
+        tick++;
+        for (Runnable ticker : tickers) {
+            ticker.run();
+        }
+        if (RegionSupport.FOLIA) {
+            return;
+        }
+
+        // 前のティックで予算を超えて残った分の後ろに、このティックのスロットを並べる
+        for (BackroomSession session : buckets[(int) (tick % WHEEL_SIZE)]) {
+            if (!session.effectQueued) {
+                session.effectQueued = true;
+                pending.add(session);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int processed = 0;
+        while (!pending.isEmpty()) {
+            BackroomSession session = pending.poll();
+            session.effectQueued = false;
+            runEffects(session);
+            processed++;
+
+            if (System.nanoTime() > deadline && !pending.isEmpty()) {
+                budgetHits++;
+                break;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        slices++;
+        totalSliceNanos += elapsed;
+        maxSliceNanos = Math.max(maxSliceNanos, elapsed);
+        processedSessions += processed;
+    }
+
+    private void runEffects(BackroomSession session) {
+        Player player = session.player;
+        if (player == null || !player.isOnline()) {
+            return;
+        }
+        BackroomLevel level = levelResolver.apply(player.getWorld());
+
+        int[] countdowns = session.effectCountdowns;
+        for (int i = 0; i < countdowns.length; i++) {
+            countdowns[i] -= WHEEL_SIZE;
+            if (countdowns[i] > 0) {
+                continue;
+            }
+            Registration registration = effects.get(i);
+            countdowns[i] = registration.period;
+
+            // バックルームの外ではカウントだけ進める
+            if (level != null) {
+                long start = metrics.start();
+                registration.effect.run(player, level);
+                registration.time.recordSince(start);
+            }
+        }
+    }
+
+    // /backroom stats 用の要約
+    synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        int sessions = 0;
+        for (List<BackroomSession> bucket : buckets) {
+            sessions += bucket.size();
+        }
+        if (RegionSupport.FOLIA) {
+            lines.add(String.format("効果ホイール: %dスロット / 登録プレイヤー %d人（各プレイヤーのリージョンで実行）",
+                    WHEEL_SIZE, sessions));
+            return lines;
+        }
+        double averageMicros = slices == 0 ? 0.0 : totalSliceNanos / 1000.0 / slices;
+        double averagePlayers = slices == 0 ? 0.0 : (double) processedSessions / slices;
+        lines.add(String.format("効果ホイール: %dスロット / 登録プレイヤー %d人 / 処理待ち %d人",
+                WHEEL_SIZE, sessions, pending.size()));
+        lines.add(String.format("スライスあたり: 平均 %.1fµs / 最大 %.1fµs / 平均 %.1f人",
+                averageMicros, maxSliceNanos / 1000.0, averagePlayers));
+        lines.add(String.format("予算 %.2fms を超えて持ち越したティック: %d回",
+                budgetNanos / 1_000_000.0, budgetHits));
+        return lines;
+    }
+}
@@ -0,0 +1,55 @@
+package backroom.backroom;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 発見済みの出口座標のキャッシュ（1ワールドにつき1つ）
+// long に詰めた座標の直接写像テーブルなので、容量は固定で、衝突したら古い方を上書きする
+// 参照時にオブジェクトを作らない
+// Folia では複数のリージョンのスレッドから使われる。各スロットは不透明アクセスで丸ごと読み書きし（x86 では通常の読み書きと同じ）、
+// 値が半分だけ書かれた座標を見ることはない
+final class ExitIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE; // ワールド境界の外になる座標
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    ExitIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ExitIndex(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        clear();
+    }
+
+    // x, z は26ビット、y は12ビット（バニラの BlockPos と同じ配置）
+    static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    boolean contains(int x, int y, int z) {
+        long key = pack(x, y, z);
+        return slots.getOpaque(slot(key)) == key;
+    }
+
+    void add(int x, int y, int z) {
+        long key = pack(x, y, z);
+        slots.setOpaque(slot(key), key);
+    }
+
+    // ワールドのアンロード時に破棄
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.setOpaque(i, EMPTY);
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
@@ -0,0 +1,296 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// 領域セル単位の照明点滅エンジン
+// 1つの点滅イベントがセル全体を覆い、範囲内の全プレイヤーへ消灯・復旧をそれぞれ1回の一括ブロック変更で送る
+// 点滅はプレイヤーのリージョンのスレッドで開始され、そのリージョンが所有する照明と受信者だけを扱う
+final class FlickerEngine {
+
+    static final int CELL_SHIFT = 5; // セルの大きさ（32ブロック）
+    static final int RANGE = 16; // セル外周から照明と受信者を含める距離
+
+    private static final long COOLDOWN_MILLIS = 30000; // 同じセルの点滅間隔30秒
+    private static final long ROLL_INTERVAL_MILLIS = 5000; // 点滅しなかったセルを次に判定するまで5秒
+    private static final long OFF_DELAY = 5; // 0.25秒後に消灯
+    private static final long RESTORE_DELAY = 15; // 消灯から0.75秒後に復旧
+    private static final long DARK_MILLIS = 10000; // 点滅後にセルを「暗い」とみなす時間（正気度の計算用）
+    private static final long SWEEP_TICKS = 1200; // 期限切れのセルを捨てる間隔（1分）
+
+    private static final PotionEffect DARKNESS = new PotionEffect(PotionEffectType.BLINDNESS, 40, 0, false, false);
+
+    // ワールドごとのセルキー -> 次に点滅を判定できる時刻
+    // 同じセルに複数のプレイヤーがいても、判定は5秒に1回だけになる
+    private final Map<UUID, Map<Long, Long>> cellCooldowns = new ConcurrentHashMap<>();
+
+    // ワールドごとのセルキー -> 点滅の影響で暗いとみなす期限
+    // どちらの表も期限切れのエントリは無いのと同じなので、tick() でまとめて捨てる（探索したセルの数だけ増え続けないように）
+    private final Map<UUID, Map<Long, Long>> darkUntil = new ConcurrentHashMap<>();
+
+    // 消灯待ちと復旧待ちのイベント（遅延が一定なので到着順 = 期限順）
+    private final ArrayDeque<FlickerEvent> offQueue = new ArrayDeque<>();
+    private final ArrayDeque<FlickerEvent> restoreQueue = new ArrayDeque<>();
+    private long currentTick;
+
+    private final Plugin plugin;
+    private final EffectQueue effects; // 音・暗闇・警告は他の効果とまとめて送る
+    private final Function<Player, BackroomSession> sessionResolver;
+    private final Metrics.Counter packets; // 送った一括ブロック変更の数
+
+    FlickerEngine(Plugin plugin, EffectQueue effects, Function<Player, BackroomSession> sessionResolver,
+                  Metrics metrics) {
+        this.plugin = plugin;
+        this.effects = effects;
+        this.sessionResolver = sessionResolver;
+        this.packets = metrics.counter("flicker.packets");
+    }
+
+    static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    static int cellX(long cellKey) {
+        return (int) (cellKey >> 32);
+    }
+
+    static int cellZ(long cellKey) {
+        return (int) cellKey;
+    }
+
+    boolean isCoolingDown(World world, long cellKey, long now) {
+        Map<Long, Long> cooldowns = cellCooldowns.get(world.getUID());
+        if (cooldowns == null) {
+            return false;
+        }
+        Long nextEligible = cooldowns.get(cellKey);
+        return nextEligible != null && now < nextEligible;
+    }
+
+    // 確率判定で点滅しなかったセルは、次の判定周期まで判定しない
+    void deferRoll(World world, long cellKey, long now) {
+        cellCooldowns.computeIfAbsent(world.getUID(), id -> new ConcurrentHashMap<>())
+                .put(cellKey, now + ROLL_INTERVAL_MILLIS);
+    }
+
+    // 最近照明が点滅したセルか（どのスレッドからでも呼べる）
+    boolean isDark(World world, long cellKey, long now) {
+        Map<Long, Long> cells = darkUntil.get(world.getUID());
+        if (cells == null) {
+            return false;
+        }
+        Long until = cells.get(cellKey);
+        return until != null && now < until;
+    }
+
+    void forgetWorld(World world) {
+        cellCooldowns.remove(world.getUID());
+        darkUntil.remove(world.getUID());
+    }
+
+    // セルとその周囲RANGEブロックにある照明ブロックをインデックスから集める
+    static List<Block> lightsInCell(World world, BackroomLevel level, long cell) {
+        Material lightMaterial = level.config.lightMaterial;
+        LightIndex index = level.lightIndex;
+        int[] layers = level.lightLayers;
+
+        int minX = (cellX(cell) << CELL_SHIFT) - RANGE;
+        int minZ = (cellZ(cell) << CELL_SHIFT) - RANGE;
+        int maxX = minX + (1 << CELL_SHIFT) + 2 * RANGE - 1;
+        int maxZ = minZ + (1 << CELL_SHIFT) + 2 * RANGE - 1;
+
+        List<Block> lightBlocks = new ArrayList<>();
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                // 他のリージョンが所有するチャンクのブロックには触れない（Paper では常に所有）
+                if (!Bukkit.isOwnedByCurrentRegion(world, chunkX, chunkZ)) {
+                    continue;
+                }
+                for (int packed : index.get(world, chunkX, chunkZ, lightMaterial, layers)) {
+                    int x = (chunkX << 4) + LightIndex.unpackX(packed);
+                    int y = LightIndex.unpackY(packed);
+                    int z = (chunkZ << 4) + LightIndex.unpackZ(packed);
+                    if (x < minX || x > maxX || z < minZ || z > maxZ) {
+                        continue;
+                    }
+
+                    // クリエイティブで壊された照明は除外
+                    Block block = world.getBlockAt(x, y, z);
+                    if (block.getType() == lightMaterial) {
+                        lightBlocks.add(block);
+                    }
+                }
+            }
+        }
+        return lightBlocks;
+    }
+
+    // セルの点滅を開始する。照明はセル±RANGEの範囲から呼び出し側が集めたもの
+    void flicker(World world, long cellKey, List<Block> lights, long now) {
+        cellCooldowns.computeIfAbsent(world.getUID(), id -> new ConcurrentHashMap<>())
+                .put(cellKey, now + COOLDOWN_MILLIS);
+        if (lights.isEmpty()) {
+            return;
+        }
+
+        int minX = (cellX(cellKey) << CELL_SHIFT) - RANGE;
+        int minZ = (cellZ(cellKey) << CELL_SHIFT) - RANGE;
+        int maxX = minX + (1 << CELL_SHIFT) + 2 * RANGE - 1;
+        int maxZ = minZ + (1 << CELL_SHIFT) + 2 * RANGE - 1;
+
+        List<Player> viewers = new ArrayList<>();
+        for (Player player : world.getPlayers()) {
+            // 他のリージョンのプレイヤーの位置はこのスレッドから読めない
+            if (!Bukkit.isOwnedByCurrentRegion(player)) {
+                continue;
+            }
+            int x = player.getLocation().getBlockX();
+            int z = player.getLocation().getBlockZ();
+            if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+                viewers.add(player);
+            }
+        }
+        if (viewers.isEmpty()) {
+            return;
+        }
+        darkUntil.computeIfAbsent(world.getUID(), id -> new ConcurrentHashMap<>()).put(cellKey, now + DARK_MILLIS);
+
+        // 消灯用と復旧用のスナップショットをイベントごとに1回だけ作る
+        List<BlockState> offStates = new ArrayList<>(lights.size());
+        List<BlockState> restoreStates = new ArrayList<>(lights.size());
+        for (Block light : lights) {
+            BlockState off = light.getState();
+            off.setType(Material.AIR);
+            offStates.add(off);
+            restoreStates.add(light.getState());
+        }
+
+        for (Player viewer : viewers) {
+            BackroomSession session = sessionResolver.apply(viewer);
+            if (session != null) {
+                effects.message(session, ChatColor.DARK_RED + "【警告】照明システム一時的障害発生。");
+            }
+        }
+
+        FlickerEvent event = new FlickerEvent(world, viewers, offStates, restoreStates, currentTick + OFF_DELAY);
+        if (RegionSupport.FOLIA) {
+            // 共有キューは使わず、受信者ごとのスレッドで消灯・復旧する
+            for (Player viewer : viewers) {
+                viewer.getScheduler().runDelayed(plugin, task -> {
+                    if (turnOff(viewer, event)) {
+                        viewer.getScheduler().runDelayed(plugin, restore -> turnOn(viewer, event), null, RESTORE_DELAY);
+                    }
+                }, null, OFF_DELAY);
+            }
+        } else {
+            offQueue.add(event);
+        }
+    }
+
+    // 効果スケジューラから毎ティック呼ばれ、消灯と復旧のキューを処理する（プレイヤーごとのタスクは作らない）
+    void tick() {
+        currentTick++;
+        if (currentTick % SWEEP_TICKS == 0) {
+            sweep(System.currentTimeMillis());
+        }
+
+        while (!offQueue.isEmpty() && offQueue.peek().dueTick <= currentTick) {
+            FlickerEvent event = offQueue.poll();
+            List<Player> reached = new ArrayList<>(event.viewers.size());
+            for (Player viewer : event.viewers) {
+                if (turnOff(viewer, event)) {
+                    reached.add(viewer);
+                }
+            }
+            if (!reached.isEmpty()) {
+                restoreQueue.add(new FlickerEvent(event.world, reached, event.offStates, event.restoreStates,
+                        currentTick + RESTORE_DELAY));
+            }
+        }
+
+        while (!restoreQueue.isEmpty() && restoreQueue.peek().dueTick <= currentTick) {
+            FlickerEvent event = restoreQueue.poll();
+            for (Player viewer : event.viewers) {
+                turnOn(viewer, event);
+            }
+        }
+    }
+
+    // 期限切れのセルを捨てる（他のスレッドが同時に書いても、期限の過ぎた値しか消さない）
+    void sweep(long now) {
+        for (Map<Long, Long> cooldowns : cellCooldowns.values()) {
+            cooldowns.values().removeIf(until -> until <= now);
+        }
+        for (Map<Long, Long> cells : darkUntil.values()) {
+            cells.values().removeIf(until -> until <= now);
+        }
+    }
+
+    private boolean turnOff(Player viewer, FlickerEvent event) {
+        if (!viewer.isOnline() || viewer.getWorld() != event.world) {
+            return false;
+        }
+
+        // ライトをオフに（1パケットにまとめて送信。見た目の同期のため効果のキューを通さない）
+        viewer.sendBlockChanges(event.offStates);
+        packets.increment();
+
+        // 音と暗闇効果
+        BackroomSession session = sessionResolver.apply(viewer);
+        if (session != null) {
+            effects.sound(session, Sound.BLOCK_GLASS_BREAK, 0.3f, 1.5f);
+            effects.potion(session, DARKNESS);
+        }
+        return true;
+    }
+
+    private void turnOn(Player viewer, FlickerEvent event) {
+        if (!viewer.isOnline() || viewer.getWorld() != event.world) {
+            return;
+        }
+
+        // ライトを元に戻す
+        viewer.sendBlockChanges(event.restoreStates);
+        packets.increment();
+
+        // 音を再生
+        BackroomSession session = sessionResolver.apply(viewer);
+        if (session != null) {
+            effects.sound(session, Sound.BLOCK_BEACON_ACTIVATE, 0.2f, 1.2f);
+        }
+    }
+
+    private static final class FlickerEvent {
+        final World world;
+        final List<Player> viewers;
+        final List<BlockState> offStates;
+        final List<BlockState> restoreStates;
+        final long dueTick;
+
+        FlickerEvent(World world, List<Player> viewers, List<BlockState> offStates,
+                     List<BlockState> restoreStates, long dueTick) {
+            this.world = world;
+            this.viewers = viewers;
+            this.offStates = offStates;
+            this.restoreStates = restoreStates;
+            this.dueTick = dueTick;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package backroom.backroom;
+
+import java.util.Arrays;
+
+// 1つの目標への流れ場（目標の周りの正方形の範囲で、歩ける列をたどった目標までの歩数）
+// 非同期スレッドで WalkGrid から幅優先探索で作り、作成後は変更しない（同じ目標を追う徘徊者で共有する）
+final class FlowField {
+
+    static final int RADIUS = 48; // 目標から探索する範囲（ブロック）
+    static final int SIZE = RADIUS * 2 + 1;
+    static final short UNREACHABLE = Short.MAX_VALUE;
+
+    // 8方向（斜めは隣の2列が両方歩けるときだけ）
+    private static final int[] STEP_X = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] STEP_Z = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    final int originX;
+    final int originZ;
+    final long createdAt; // System.nanoTime
+    private final short[] distance; // z * SIZE + x の順
+
+    private FlowField(int originX, int originZ, short[] distance, long createdAt) {
+        this.originX = originX;
+        this.originZ = originZ;
+        this.distance = distance;
+        this.createdAt = createdAt;
+    }
+
+    // 目標の列から4方向に広げる（目標の列そのものは歩けなくても起点にする。出口の上に立つプレイヤーなど）
+    static FlowField build(WalkGrid grid, int targetX, int targetZ) {
+        int originX = targetX - RADIUS;
+        int originZ = targetZ - RADIUS;
+        boolean[] walkable = new boolean[SIZE * SIZE];
+        grid.copy(originX, originZ, SIZE, walkable);
+        short[] distance = new short[SIZE * SIZE];
+        Arrays.fill(distance, UNREACHABLE);
+        int[] queue = new int[SIZE * SIZE];
+        int head = 0;
+        int tail = 0;
+        int start = RADIUS * SIZE + RADIUS;
+        distance[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int index = queue[head++];
+            int x = index % SIZE;
+            int z = index / SIZE;
+            short next = (short) (distance[index] + 1);
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + STEP_X[dir];
+                int nz = z + STEP_Z[dir];
+                if (nx < 0 || nz < 0 || nx >= SIZE || nz >= SIZE) {
+                    continue;
+                }
+                int neighbor = nz * SIZE + nx;
+                if (distance[neighbor] == UNREACHABLE && walkable[neighbor]) {
+                    distance[neighbor] = next;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        return new FlowField(originX, originZ, distance, System.nanoTime());
+    }
+
+    // 目標までの歩数（範囲外か、たどり着けなければ UNREACHABLE）
+    int distanceAt(int x, int z) {
+        int fx = x - originX;
+        int fz = z - originZ;
+        if (fx < 0 || fz < 0 || fx >= SIZE || fz >= SIZE) {
+            return UNREACHABLE;
+        }
+        return distance[fz * SIZE + fx];
+    }
+
+    // 次に向かう列の向き（dx を上位、dz を下位に詰めた値。進めなければ 0）
+    // 歩数が最も減る隣の列を選ぶ（斜めは角を削らないときだけ）
+    int nextStep(int x, int z) {
+        int best = distanceAt(x, z);
+        int bestDir = -1;
+        for (int dir = 0; dir < 8; dir++) {
+            int dx = STEP_X[dir];
+            int dz = STEP_Z[dir];
+            if (dir >= 4 && (distanceAt(x + dx, z) == UNREACHABLE || distanceAt(x, z + dz) == UNREACHABLE)) {
+                continue;
+            }
+            int d = distanceAt(x + dx, z + dz);
+            if (d < best) {
+                best = d;
+                bestDir = dir;
+            }
+        }
+        if (bestDir < 0) {
+            return 0;
+        }
+        return (STEP_X[bestDir] << 8) | (STEP_Z[bestDir] & 0xFF);
+    }
+
+    static int stepX(int step) {
+        return step >> 8;
+    }
+
+    static int stepZ(int step) {
+        return (byte) step;
+    }
+}
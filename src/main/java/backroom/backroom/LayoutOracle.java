@@ -0,0 +1,134 @@
+package backroom.backroom;
+
+import org.bukkit.util.noise.SimplexOctaveGenerator;
+
+import java.util.Random;
+
+// 迷路の配置をチャンクを読まずに答える（1レベルにつき1つ）
+// 列ごとの規則はここに置き、生成器も同じ規則を呼ぶので、問い合わせの答えと生成されたブロックは常に一致する
+// LevelConfig・列ごとのハッシュ乱数・ノイズだけを読む純粋な関数なので、どのスレッドからでも呼べる
+final class LayoutOracle {
+
+    // 列ごとの乱数の用途（同じ列でも用途ごとに独立した値を引く）
+    static final int SALT_FLOOR_DAMAGE = 1;
+    static final int SALT_FLOOR_POWDER = 2;
+    static final int SALT_FLOOR_WATER = 3;
+    static final int SALT_WALL_GAP = 4;
+    static final int SALT_LIGHT = 5;
+    static final int SALT_EXIT = 6;
+    static final int SALT_STAIR = 7;
+    static final int SALT_DECORATION = 8;
+    static final int SALT_DECORATION_KIND = 9;
+    static final int SALT_PREFAB = 10; // 部屋のテンプレート（列ではなくチャンク座標で引く）
+    static final int SALT_PREFAB_KIND = 11;
+
+    final LevelConfig config;
+    final NoiseField noiseField;
+    final ChunkSkeleton skeleton; // 生成器が使う周期的な骨組み
+    final PrefabLayout prefabs; // 部屋のテンプレートの配置（populator と共有）
+
+    LayoutOracle(LevelConfig config) {
+        this(config, new PrefabLayout(config));
+    }
+
+    LayoutOracle(LevelConfig config, PrefabLayout prefabs) {
+        this.config = config;
+        this.prefabs = prefabs;
+        // 構築後は読み取り専用なのでスレッド間で共有できる
+        SimplexOctaveGenerator noiseGenerator = new SimplexOctaveGenerator(new Random(config.level * 31), 8);
+        noiseGenerator.setScale(0.01);
+        this.noiseField = new NoiseField(noiseGenerator);
+        this.skeleton = new ChunkSkeleton(config);
+    }
+
+    // 壁の列か（床から天井までふさがっている）
+    boolean isWall(int x, int z) {
+        if (!config.usesNoise) {
+            return wall(config, x, z, 0.0, 0.0);
+        }
+        return wall(config, x, z, noiseField.interpolated(x, z), noiseField.interpolated(z, x));
+    }
+
+    // 天井照明のある列か（床の上の壊れた照明は含まない）
+    boolean isLight(int x, int z) {
+        return light(config, x, z) && !isWall(x, z);
+    }
+
+    // 床が出口（エメラルドブロック）の列か（階段と重なった列は生成時に階段が上書きする）
+    // 部屋のテンプレートが床を書き換えた列は出口ではない
+    boolean isExit(int x, int z) {
+        return exit(config, x, z) && !stair(config, x, z) && !isWall(x, z)
+                && (prefabs.column(x, z) & PrefabLayout.COLUMN_FLOOR) == 0;
+    }
+
+    // 床が下層への階段の列か
+    boolean isStair(int x, int z) {
+        return stair(config, x, z) && !isWall(x, z)
+                && (prefabs.column(x, z) & PrefabLayout.COLUMN_FLOOR) == 0;
+    }
+
+    // 立っても何も起きない列か（壁・出口・階段・床の上の装飾・部屋のテンプレートの障害物がない）
+    // 安い乱数の判定を先に行い、ノイズを読む壁の判定は最後にする
+    // テンプレートが壁を空気で上書きした列も壁として扱う（立てる列を見落とすだけで、壁の中には出さない）
+    boolean isStandable(int x, int z) {
+        return !exit(config, x, z) && !stair(config, x, z) && !decoration(config, x, z)
+                && (prefabs.column(x, z) & PrefabLayout.COLUMN_BLOCKED) == 0 && !isWall(x, z);
+    }
+
+    // 以下は列ごとの規則（生成器はチャンク分のノイズをまとめて補間し、その値で同じ規則を呼ぶ）
+    // 周期的な部分（onGrid と lightSlot）は ChunkSkeleton が前もってチャンクの形ごとに求めておく
+
+    // 格子をノイズで反転し、ランダムな隙間で崩す（分岐のない算術）
+    static boolean wall(LevelConfig config, int x, int z, double noise1, double noise2) {
+        return (onGrid(config, x, z) ^ flip(config, noise1, noise2)) & intact(config, x, z);
+    }
+
+    // 格子の線上の列か（周期的）
+    static boolean onGrid(LevelConfig config, int x, int z) {
+        int period = config.gridPeriod;
+        return (x % period == 0) | (z % period == 0);
+    }
+
+    // 迷路ノイズで格子を反転するか
+    static boolean flip(LevelConfig config, double noise1, double noise2) {
+        return (noise1 > config.noiseHigh & noise2 > config.noiseLow)
+                | (noise2 > config.noiseHigh & noise1 > config.noiseLow);
+    }
+
+    // 壁が崩れていないか（列ごとの乱数）
+    static boolean intact(LevelConfig config, int x, int z) {
+        return ColumnRandom.nextDouble(config.seed, x, z, SALT_WALL_GAP) >= config.wallGapChance;
+    }
+
+    // 格子の中央の天井照明（壁の列では置かない）
+    static boolean light(LevelConfig config, int x, int z) {
+        return lightSlot(config, x, z) && lightRoll(config, x, z);
+    }
+
+    // 照明を置ける格子の中央か（周期的。負の座標では剰余が0以下になる）
+    static boolean lightSlot(LevelConfig config, int x, int z) {
+        int period = config.gridPeriod;
+        int offset = config.lightOffset;
+        return (x % period == offset) & (z % period == offset);
+    }
+
+    static boolean lightRoll(LevelConfig config, int x, int z) {
+        return config.lightChance >= 1.0
+                || ColumnRandom.nextDouble(config.seed, x, z, SALT_LIGHT) < config.lightChance;
+    }
+
+    // 以下は壁ではない列だけの要素
+    static boolean exit(LevelConfig config, int x, int z) {
+        return ColumnRandom.nextDouble(config.seed, x, z, SALT_EXIT) < config.exitChance;
+    }
+
+    static boolean stair(LevelConfig config, int x, int z) {
+        return config.stairChance > 0.0
+                && ColumnRandom.nextDouble(config.seed, x, z, SALT_STAIR) < config.stairChance;
+    }
+
+    static boolean decoration(LevelConfig config, int x, int z) {
+        return config.decorationChance > 0.0
+                && ColumnRandom.nextDouble(config.seed, x, z, SALT_DECORATION) < config.decorationChance;
+    }
+}
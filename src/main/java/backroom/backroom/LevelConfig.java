@@ -0,0 +1,86 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+
+// レベルごとの不変な生成設定のスナップショット
+// ワールド生成スレッドから並行して読まれるため、すべてのフィールドは final
+// レベルの定義（LevelProfile）は構築時に数値パラメータへ落とし込み、生成中は分岐も設定の参照もしない
+// レベル数が増えても列ごとの処理は同じ（レベルの違いは値の違いだけ）
+final class LevelConfig {
+
+    final int level;
+    final long seed; // 列ごとの乱数のシード
+    final int baseY; // 床の高さ
+    final int wallHeight;
+    final double exitChance; // 1列あたりの出口の確率（レベル補正済み）
+    final double stairChance; // 1列あたりの下層への階段の確率（最深レベルでは0）
+
+    // 壁の規則：gridPeriod ごとの格子をノイズで反転し、wallGapChance で崩す
+    final int gridPeriod;
+    final double wallGapChance;
+    final boolean usesNoise; // 壁の規則が迷路ノイズを読むか（レベル0は格子のみ）
+    final double noiseHigh; // noise1 > high かつ noise2 > low（またはその逆）で格子を反転
+    final double noiseLow;
+
+    // 天井照明：格子の中央（周期内のオフセット）に lightChance の確率で置く
+    final int lightOffset;
+    final double lightChance;
+
+    // 床の損傷と装飾
+    final double floorDamageChance;
+    final double waterChance;
+    final double decorationChance;
+    final Material[] decorationMaterials;
+    final double prefabChance; // チャンクが部屋のテンプレートの起点になる確率
+
+    final Material floorMaterial;
+    final Material wallMaterial;
+    final Material ceilingMaterial;
+    final Material lightMaterial;
+    final Material damagedFloorMaterial;
+
+    final LevelProfile profile; // 環境効果など生成以外の定義
+
+    LevelConfig(int level, LevelProfile profile, int floorHeight, int wallHeight, double exitChance, int maxLevels) {
+        this.level = level;
+        this.profile = profile;
+        this.seed = level * 31L;
+        this.baseY = 60 + (level * floorHeight);
+        this.wallHeight = wallHeight;
+        this.exitChance = exitChance / (level + 1);
+        this.stairChance = level < maxLevels - 1 ? exitChance / 3 : 0.0;
+
+        this.floorMaterial = profile.floor;
+        this.wallMaterial = profile.wall;
+        this.ceilingMaterial = profile.ceiling;
+        this.lightMaterial = profile.light;
+        this.damagedFloorMaterial = profile.damagedFloor;
+
+        this.gridPeriod = profile.gridPeriod;
+        this.wallGapChance = profile.wallGapChance;
+        this.usesNoise = profile.usesNoise();
+        this.noiseHigh = profile.noiseHigh;
+        this.noiseLow = profile.noiseLow;
+        this.lightOffset = profile.lightOffset;
+        this.lightChance = profile.lightChance;
+        this.floorDamageChance = profile.floorDamageChance;
+        this.waterChance = profile.waterChance;
+        this.decorationChance = profile.decorationChance;
+        this.decorationMaterials = profile.decorations;
+        this.prefabChance = profile.prefabChance;
+    }
+
+    int ceilingY() {
+        return baseY + wallHeight + 1;
+    }
+
+    // 床の上の装飾に照明素材が含まれるか（点滅の対象になる）
+    boolean hasFloorLights() {
+        for (Material material : decorationMaterials) {
+            if (material == lightMaterial) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
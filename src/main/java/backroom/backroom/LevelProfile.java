@@ -0,0 +1,170 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// config.yml の levels.<番号> から読んだレベルの定義（素材・壁の規則・照明・損傷・装飾・部屋・環境効果の確率）
+// 書かれていない項目は1つ上のレベルから引き継ぐので、定義より深いレベルは最も深い定義の繰り返しになる
+// 読み込み後は変更しない。生成に使う値は LevelConfig が数値に落とし込む
+final class LevelProfile {
+
+    // 環境音（Minecraft のサウンドキー、音量、音程）
+    static final class AmbientSound {
+        final String key;
+        final float volume;
+        final float pitch;
+
+        AmbientSound(String key, float volume, float pitch) {
+            this.key = key;
+            this.volume = volume;
+            this.pitch = pitch;
+        }
+    }
+
+    final Material floor;
+    final Material wall;
+    final Material ceiling;
+    final Material light;
+    final Material damagedFloor; // 損傷した床の素材
+
+    // 壁：gridPeriod ごとの格子を迷路ノイズで反転し、wallGapChance で崩す
+    // noise_high を書かなければノイズを読まない（格子のみ）。noise_high だけを書けば noise_low は下限なし
+    final int gridPeriod;
+    final double wallGapChance;
+    final double noiseHigh;
+    final double noiseLow;
+
+    final int lightOffset;
+    final double lightChance;
+
+    final double floorDamageChance;
+    final double waterChance;
+    final double decorationChance;
+    final Material[] decorations;
+    final double prefabChance; // チャンクが部屋のテンプレートの起点になる確率
+
+    // 環境効果
+    final double flickerChance; // 判定ごとにセルが点滅する確率
+    final AmbientSound[] ambientSounds; // 再生ごとに1つを等確率で選ぶ
+    final double fogBlindnessChance;
+    final double fogNauseaChance;
+
+    // 定義が1つも無いときの既定値（レベル0の古典的なバックルーム）
+    private LevelProfile() {
+        floor = Material.YELLOW_CONCRETE;
+        wall = Material.YELLOW_TERRACOTTA;
+        ceiling = Material.YELLOW_STAINED_GLASS;
+        light = Material.GLOWSTONE;
+        damagedFloor = Material.YELLOW_CONCRETE_POWDER;
+        gridPeriod = 8;
+        wallGapChance = 0.15;
+        noiseHigh = Double.POSITIVE_INFINITY;
+        noiseLow = Double.POSITIVE_INFINITY;
+        lightOffset = 4;
+        lightChance = 1.0;
+        floorDamageChance = 0.0;
+        waterChance = 0.0;
+        decorationChance = 0.0;
+        decorations = new Material[]{Material.AIR};
+        prefabChance = 0.0;
+        flickerChance = 0.2;
+        ambientSounds = new AmbientSound[]{new AmbientSound("block.beacon.ambient", 0.2f, 1.0f)};
+        fogBlindnessChance = 0.1;
+        fogNauseaChance = 0.0;
+    }
+
+    private LevelProfile(ConfigurationSection section, LevelProfile parent, Logger logger) {
+        floor = material(section, "floor", parent.floor, logger);
+        wall = material(section, "wall", parent.wall, logger);
+        ceiling = material(section, "ceiling", parent.ceiling, logger);
+        light = material(section, "light", parent.light, logger);
+        damagedFloor = material(section, "damaged_floor", parent.damagedFloor, logger);
+        gridPeriod = Math.max(1, section.getInt("grid_period", parent.gridPeriod));
+        wallGapChance = section.getDouble("wall_gap_chance", parent.wallGapChance);
+        noiseHigh = section.getDouble("noise_high", parent.noiseHigh);
+        noiseLow = section.getDouble("noise_low", section.contains("noise_high") ? Double.NEGATIVE_INFINITY : parent.noiseLow);
+        lightOffset = Math.floorMod(section.getInt("light_offset", parent.lightOffset), gridPeriod);
+        lightChance = section.getDouble("light_chance", parent.lightChance);
+        floorDamageChance = section.getDouble("floor_damage_chance", parent.floorDamageChance);
+        waterChance = section.getDouble("water_chance", parent.waterChance);
+        decorationChance = section.getDouble("decoration_chance", parent.decorationChance);
+        decorations = materials(section, "decorations", parent.decorations, logger);
+        prefabChance = section.getDouble("prefab_chance", parent.prefabChance);
+        flickerChance = section.getDouble("flicker_chance", parent.flickerChance);
+        ambientSounds = sounds(section, "ambient_sounds", parent.ambientSounds, logger);
+        fogBlindnessChance = section.getDouble("fog_blindness_chance", parent.fogBlindnessChance);
+        fogNauseaChance = section.getDouble("fog_nausea_chance", parent.fogNauseaChance);
+    }
+
+    // levels セクションから count 個のレベルを読む（levels が無ければ既定値の繰り返し）
+    static LevelProfile[] loadAll(ConfigurationSection levels, int count, Logger logger) {
+        LevelProfile[] profiles = new LevelProfile[count];
+        LevelProfile parent = new LevelProfile();
+        for (int level = 0; level < count; level++) {
+            ConfigurationSection section = levels == null ? null : levels.getConfigurationSection(String.valueOf(level));
+            profiles[level] = section == null ? parent : new LevelProfile(section, parent, logger);
+            parent = profiles[level];
+        }
+        return profiles;
+    }
+
+    // 迷路ノイズで格子を反転するか
+    boolean usesNoise() {
+        return noiseHigh != Double.POSITIVE_INFINITY;
+    }
+
+    private static Material material(ConfigurationSection section, String path, Material fallback, Logger logger) {
+        String name = section.getString(path);
+        if (name == null) {
+            return fallback;
+        }
+        Material material = Material.matchMaterial(name);
+        if (material == null) {
+            logger.warning("levels." + section.getName() + "." + path + " の素材 " + name + " が見つかりません（"
+                    + fallback + " を使います）");
+            return fallback;
+        }
+        return material;
+    }
+
+    private static Material[] materials(ConfigurationSection section, String path, Material[] fallback, Logger logger) {
+        if (!section.isList(path)) {
+            return fallback;
+        }
+        List<Material> materials = new ArrayList<>();
+        for (String name : section.getStringList(path)) {
+            Material material = Material.matchMaterial(name);
+            if (material == null) {
+                logger.warning("levels." + section.getName() + "." + path + " の素材 " + name + " が見つかりません");
+                continue;
+            }
+            materials.add(material);
+        }
+        // 装飾の種類は1つ以上（生成器が添字で引く）
+        return materials.isEmpty() ? new Material[]{Material.AIR} : materials.toArray(new Material[0]);
+    }
+
+    // "サウンドキー 音量 音程"（音量と音程は省略可）
+    private static AmbientSound[] sounds(ConfigurationSection section, String path, AmbientSound[] fallback,
+                                         Logger logger) {
+        if (!section.isList(path)) {
+            return fallback;
+        }
+        List<AmbientSound> sounds = new ArrayList<>();
+        for (String entry : section.getStringList(path)) {
+            String[] parts = entry.trim().split("\\s+");
+            try {
+                float volume = parts.length > 1 ? Float.parseFloat(parts[1]) : 1.0f;
+                float pitch = parts.length > 2 ? Float.parseFloat(parts[2]) : 1.0f;
+                sounds.add(new AmbientSound(parts[0], volume, pitch));
+            } catch (NumberFormatException e) {
+                logger.warning("levels." + section.getName() + "." + path + " の環境音 " + entry + " を読めません");
+            }
+        }
+        return sounds.toArray(new AmbientSound[0]);
+    }
+}
@@ -0,0 +1,145 @@
+package backroom.backroom;
+
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// チャンクごとの照明ブロック位置インデックス（1レベルにつき1つ）
+// 生成時に記録したものは読み込みイベントで登録し、未登録のチャンクは照明が置かれ得る層だけを一度だけ走査する
+// 登録されるのは読み込み済みのチャンクだけ（アンロードで破棄する）
+final class LightIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int MAX_PENDING = 4096; // 読み込み待ちの記録の上限（超えたら古いものから捨てる）
+
+    // チャンクキー -> チャンク内の照明位置（pack済みのローカル座標）
+    private final Map<Long, int[]> chunks = new ConcurrentHashMap<>();
+
+    // 生成されたがまだ読み込まれていないチャンクの記録（記録した順）
+    // 生成の途中で止まったチャンク（事前生成の外周など）は読み込まれないので、上限を超えたら最も古い記録から捨てる
+    // 捨てた記録のチャンクは、読み込み後に get() が照明の層を走査して作り直す
+    private final Map<Long, int[]> pending = Collections.synchronizedMap(new LinkedHashMap<Long, int[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > MAX_PENDING;
+        }
+    });
+
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    // y は符号付きのまま上位ビットに、z と x は下位8ビットに詰める
+    static int pack(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    static int unpackX(int packed) {
+        return packed & 0xF;
+    }
+
+    static int unpackY(int packed) {
+        return packed >> 8;
+    }
+
+    static int unpackZ(int packed) {
+        return (packed >> 4) & 0xF;
+    }
+
+    // ワールド生成スレッドから呼ばれる
+    void record(int chunkX, int chunkZ, int[] lights, int count) {
+        int[] copy = count == 0 ? EMPTY : Arrays.copyOf(lights, count);
+        pending.put(chunkKey(chunkX, chunkZ), copy);
+    }
+
+    // 生成の後で部屋のテンプレートが置いた照明を、読み込み待ちの記録に加える（ワールド生成スレッドから呼ばれる）
+    // 記録が上限で捨てられていれば何もしない（読み込み後の走査がテンプレートの照明の高さも調べる）
+    void add(int chunkX, int chunkZ, int[] lights, int count) {
+        if (count == 0) {
+            return;
+        }
+        pending.computeIfPresent(chunkKey(chunkX, chunkZ), (key, recorded) -> {
+            int[] merged = Arrays.copyOf(recorded, recorded.length + count);
+            int size = recorded.length;
+            for (int i = 0; i < count; i++) {
+                if (!contains(recorded, lights[i])) {
+                    merged[size++] = lights[i];
+                }
+            }
+            return size == merged.length ? merged : Arrays.copyOf(merged, size);
+        });
+    }
+
+    private static boolean contains(int[] lights, int packed) {
+        for (int light : lights) {
+            if (light == packed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // チャンクの読み込み時に生成時の記録を登録する
+    void load(int chunkX, int chunkZ) {
+        long key = chunkKey(chunkX, chunkZ);
+        int[] lights = pending.remove(key);
+        if (lights != null) {
+            chunks.put(key, lights);
+        }
+    }
+
+    void remove(int chunkX, int chunkZ) {
+        long key = chunkKey(chunkX, chunkZ);
+        chunks.remove(key);
+        pending.remove(key);
+    }
+
+    int size() {
+        return chunks.size();
+    }
+
+    int pendingSize() {
+        return pending.size();
+    }
+
+    // 読み込み済みチャンクの照明位置を返す（未読み込みなら空）
+    int[] get(World world, int chunkX, int chunkZ, Material lightMaterial, int[] layers) {
+        long key = chunkKey(chunkX, chunkZ);
+        int[] lights = chunks.get(key);
+        if (lights != null) {
+            return lights;
+        }
+        if (!world.isChunkLoaded(chunkX, chunkZ)) {
+            return EMPTY;
+        }
+        // 読み込みイベントより先に問い合わされたとき
+        lights = pending.remove(key);
+        if (lights != null) {
+            chunks.put(key, lights);
+            return lights;
+        }
+
+        // ディスクから読み込まれたチャンク：照明の層だけを走査
+        Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+        int[] buffer = new int[16 * 16 * layers.length];
+        int count = 0;
+        for (int y : layers) {
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    if (chunk.getBlock(x, y, z).getType() == lightMaterial) {
+                        buffer[count++] = pack(x, y, z);
+                    }
+                }
+            }
+        }
+        lights = count == 0 ? EMPTY : Arrays.copyOf(buffer, count);
+        chunks.put(key, lights);
+        return lights;
+    }
+}
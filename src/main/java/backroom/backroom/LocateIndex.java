@@ -0,0 +1,129 @@
+package backroom.backroom;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 出口と下層への階段の位置の索引（1レベルにつき1つ）
+// 128x128 ブロックの領域ごとに、初めて問い合わされたときに LayoutOracle の規則で位置を求めて覚えておく
+// 生成器と同じ規則なので、チャンクを読まずに答えられる（どのスレッドからでも呼べる）
+final class LocateIndex {
+
+    static final int EXIT = 0;
+    static final int STAIR = 1;
+
+    static final int REGION_SHIFT = 7;
+    static final int REGION_SIZE = 1 << REGION_SHIFT;
+    static final int MAX_RINGS = 8; // 探す範囲（問い合わせた領域から8領域 = 約1000ブロック）
+    private static final int MAX_REGIONS = 2048; // 覚えておく領域の数の上限（超えたらまとめて捨てる）
+
+    // 1領域分の位置（領域内の座標を x << REGION_SHIFT | z に詰めた値）
+    private static final class Region {
+        final int[][] positions;
+
+        Region(int[][] positions) {
+            this.positions = positions;
+        }
+    }
+
+    private final LayoutOracle oracle;
+    private final Map<Long, Region> regions = new ConcurrentHashMap<>();
+
+    LocateIndex(LayoutOracle oracle) {
+        this.oracle = oracle;
+    }
+
+    // (x, z) から最も近い出口または階段の列（{x, z}）。範囲内に無ければ null
+    // min / max はワールド境界（境界の外の列は返さない）
+    int[] nearest(int kind, int x, int z, int min, int max) {
+        if (kind == STAIR && oracle.config.stairChance <= 0.0) {
+            return null;
+        }
+        int regionX = x >> REGION_SHIFT;
+        int regionZ = z >> REGION_SHIFT;
+        int bestX = 0;
+        int bestZ = 0;
+        long best = Long.MAX_VALUE;
+        for (int ring = 0; ring <= MAX_RINGS; ring++) {
+            for (int dx = -ring; dx <= ring; dx++) {
+                for (int dz = -ring; dz <= ring; dz++) {
+                    // 環の外周だけを調べる
+                    if (Math.max(Math.abs(dx), Math.abs(dz)) != ring) {
+                        continue;
+                    }
+                    int originX = (regionX + dx) << REGION_SHIFT;
+                    int originZ = (regionZ + dz) << REGION_SHIFT;
+                    if (originX > max || originZ > max || originX + REGION_SIZE <= min || originZ + REGION_SIZE <= min) {
+                        continue;
+                    }
+                    for (int packed : region(regionX + dx, regionZ + dz).positions[kind]) {
+                        int px = originX + (packed >> REGION_SHIFT);
+                        int pz = originZ + (packed & (REGION_SIZE - 1));
+                        if (px < min || px > max || pz < min || pz > max) {
+                            continue;
+                        }
+                        long distance = (long) (px - x) * (px - x) + (long) (pz - z) * (pz - z);
+                        if (distance < best) {
+                            best = distance;
+                            bestX = px;
+                            bestZ = pz;
+                        }
+                    }
+                }
+            }
+            // 次の環の列はどれも ring 領域分以上離れている
+            long reach = (long) ring * REGION_SIZE;
+            if (best <= reach * reach) {
+                break;
+            }
+        }
+        return best == Long.MAX_VALUE ? null : new int[]{bestX, bestZ};
+    }
+
+    private Region region(int regionX, int regionZ) {
+        long key = FlickerEngine.cellKey(regionX, regionZ);
+        Region region = regions.get(key);
+        if (region != null) {
+            return region;
+        }
+        // 同時に同じ領域を求めても結果は同じなので、ロックせずに上書きしてよい
+        region = build(regionX << REGION_SHIFT, regionZ << REGION_SHIFT);
+        if (regions.size() >= MAX_REGIONS) {
+            regions.clear();
+        }
+        regions.put(key, region);
+        return region;
+    }
+
+    // 安い乱数の判定で候補を絞ってから、壁やテンプレートを含めた判定をする
+    private Region build(int originX, int originZ) {
+        LevelConfig config = oracle.config;
+        int[] exits = new int[16];
+        int exitCount = 0;
+        int[] stairs = new int[16];
+        int stairCount = 0;
+        for (int lx = 0; lx < REGION_SIZE; lx++) {
+            int x = originX + lx;
+            for (int lz = 0; lz < REGION_SIZE; lz++) {
+                int z = originZ + lz;
+                int packed = (lx << REGION_SHIFT) | lz;
+                if (LayoutOracle.exit(config, x, z) && oracle.isExit(x, z)) {
+                    if (exitCount == exits.length) {
+                        exits = Arrays.copyOf(exits, exitCount * 2);
+                    }
+                    exits[exitCount++] = packed;
+                }
+                if (LayoutOracle.stair(config, x, z) && oracle.isStair(x, z)) {
+                    if (stairCount == stairs.length) {
+                        stairs = Arrays.copyOf(stairs, stairCount * 2);
+                    }
+                    stairs[stairCount++] = packed;
+                }
+            }
+        }
+        return new Region(new int[][]{
+                Arrays.copyOf(exits, exitCount),
+                Arrays.copyOf(stairs, stairCount)
+        });
+    }
+}
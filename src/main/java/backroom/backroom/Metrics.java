@@ -0,0 +1,227 @@
+package backroom.backroom;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 処理時間のヒストグラムと回数のカウンター（/backroom stats と CSV 出力用）
+// 記録はロックなし（生成はワーカースレッド、Folia では移動や効果が各リージョンのスレッドから同時に来る）
+// 無効のときは start() が 0 を返し、記録は比較1回で終わる
+final class Metrics {
+
+    // 計測しない（ベンチマークや無効設定用）
+    static final Metrics DISABLED = new Metrics(false);
+
+    private final boolean enabled;
+    // 名前の登録は起動時と、まれな移動のときだけ（登録順に表示する）
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+
+    Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // 計測の開始時刻（無効なら 0）
+    long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    synchronized Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    synchronized Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter(enabled));
+    }
+
+    // 値を0に戻す（記録中の値が一部残ることがあるが、統計の目安としては十分）
+    synchronized void reset() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    // /backroom stats 用の要約（記録のないものは省く）
+    synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.count();
+            if (count == 0) {
+                continue;
+            }
+            lines.add(String.format("%s: %d回 / 平均 %.1fµs / p50 %.1fµs / p99 %.1fµs / 最大 %.1fµs",
+                    entry.getKey(), count, histogram.meanNanos() / 1000.0,
+                    histogram.percentileNanos(0.50) / 1000.0, histogram.percentileNanos(0.99) / 1000.0,
+                    histogram.maxNanos() / 1000.0));
+        }
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            long value = entry.getValue().value();
+            if (value != 0) {
+                lines.add(entry.getKey() + ": " + value);
+            }
+        }
+        return lines;
+    }
+
+    // 現在の値を CSV に1行ずつ追記する（ファイルが無ければ見出しから）
+    synchronized void appendCsv(File file, long timestampMillis) throws IOException {
+        boolean header = !file.exists();
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            if (header) {
+                out.println("timestamp,name,count,mean_us,p50_us,p99_us,max_us");
+            }
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                out.printf(Locale.ROOT, "%d,%s,%d,%.2f,%.2f,%.2f,%.2f%n", timestampMillis, entry.getKey(),
+                        histogram.count(), histogram.meanNanos() / 1000.0,
+                        histogram.percentileNanos(0.50) / 1000.0, histogram.percentileNanos(0.99) / 1000.0,
+                        histogram.maxNanos() / 1000.0);
+            }
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                out.printf(Locale.ROOT, "%d,%s,%d,,,,%n", timestampMillis, entry.getKey(),
+                        entry.getValue().value());
+            }
+        }
+    }
+
+    // 対数のバケット（2の累乗ごとに4分割、誤差25%以内）に数える処理時間のヒストグラム
+    static final class Histogram {
+
+        private static final int LINEAR = 16; // 16ns 未満はそのまま
+        private static final int SUB_BITS = 2;
+        private static final int BUCKETS = LINEAR + (63 - 4) * (1 << SUB_BITS) + (1 << SUB_BITS);
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        // start は Metrics.start() の戻り値（0 なら無効なので何もしない）
+        void recordSince(long start) {
+            if (start == 0L) {
+                return;
+            }
+            record(System.nanoTime() - start);
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            buckets.incrementAndGet(bucketOf(nanos));
+            totalNanos.add(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        private static int bucketOf(long nanos) {
+            if (nanos < LINEAR) {
+                return (int) nanos;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos); // 4 以上
+            int sub = (int) (nanos >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return LINEAR + ((exponent - 4) << SUB_BITS) + sub;
+        }
+
+        // バケットに入る最大の値（百分位は少し大きめに報告する）
+        private static long upperBound(int bucket) {
+            if (bucket < LINEAR) {
+                return bucket;
+            }
+            int exponent = ((bucket - LINEAR) >> SUB_BITS) + 4;
+            int sub = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+            long width = 1L << (exponent - SUB_BITS);
+            return (((1L << SUB_BITS) + sub) * width) + width - 1;
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        double meanNanos() {
+            long count = count();
+            return count == 0 ? 0.0 : (double) totalNanos.sum() / count;
+        }
+
+        long maxNanos() {
+            return maxNanos.get();
+        }
+
+        long percentileNanos(double fraction) {
+            long count = count();
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0L);
+            }
+            totalNanos.reset();
+            maxNanos.set(0L);
+        }
+    }
+
+    // 回数のカウンター
+    static final class Counter {
+
+        private final boolean enabled;
+        private final LongAdder value = new LongAdder();
+
+        Counter(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        void increment() {
+            if (enabled) {
+                value.increment();
+            }
+        }
+
+        void add(long amount) {
+            if (enabled) {
+                value.add(amount);
+            }
+        }
+
+        long value() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+}
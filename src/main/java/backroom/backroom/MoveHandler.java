@@ -0,0 +1,159 @@
+package backroom.backroom;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Random;
+import java.util.function.Function;
+
+// プレイヤーの移動ごとの判定（サーバーで最も頻繁に呼ばれる処理）
+// 毎回の判定だけをここに置き、まれに起こるレベル間の移動は Transitions に任せる
+final class MoveHandler {
+
+    // 判定の結果として起こるレベル間の移動
+    interface Transitions {
+        void outOfBounds(Player player, BackroomSession session, BackroomLevel level);
+
+        void exit(Player player, BackroomSession session, BackroomLevel level);
+
+        void descend(Player player, BackroomSession session, BackroomLevel level);
+
+        void noclip(Player player, BackroomSession session);
+    }
+
+    private final Function<World, BackroomLevel> levelResolver;
+    private final Function<Player, BackroomSession> sessionResolver;
+    private final TransferPipeline transfers;
+    private final Transitions transitions;
+    private final PlayerStore store;
+    private final Random random;
+    private final int roomMin;
+    private final int roomMax;
+    private final int maxLevels;
+    private final Metrics metrics;
+    private final Metrics.Histogram backroomTime;
+    private final Metrics.Histogram overworldTime;
+
+    MoveHandler(Function<World, BackroomLevel> levelResolver, Function<Player, BackroomSession> sessionResolver,
+                TransferPipeline transfers, Transitions transitions, PlayerStore store, Random random,
+                int roomMin, int roomMax, int maxLevels, Metrics metrics) {
+        this.levelResolver = levelResolver;
+        this.sessionResolver = sessionResolver;
+        this.transfers = transfers;
+        this.transitions = transitions;
+        this.store = store;
+        this.random = random;
+        this.roomMin = roomMin;
+        this.roomMax = roomMax;
+        this.maxLevels = maxLevels;
+        this.metrics = metrics;
+        this.backroomTime = metrics.histogram("move.backroom");
+        this.overworldTime = metrics.histogram("move.overworld");
+    }
+
+    void onMove(Player player, Location from, Location to) {
+        // バックルーム内の移動処理
+        long start = metrics.start();
+        BackroomLevel backroomLevel = levelResolver.apply(to.getWorld());
+        if (backroomLevel != null) {
+            moveInBackroom(player, backroomLevel, from, to);
+            backroomTime.recordSince(start);
+        } else {
+            moveInOverworld(player, from, to);
+            overworldTime.recordSince(start);
+        }
+    }
+
+    private void moveInBackroom(Player player, BackroomLevel backroomLevel, Location from, Location to) {
+        // 視点の回転やブロック内の移動では何もしない（最も多いケース、割り当てなし）
+        if (to.getBlockX() == from.getBlockX() && to.getBlockY() == from.getBlockY()
+                && to.getBlockZ() == from.getBlockZ()) {
+            return;
+        }
+
+        // 移動中（テレポートの完了待ち）は出口や階段を再び発火させない
+        BackroomSession session = sessionResolver.apply(player);
+        if (session == null || transfers.isTransferring(session)) {
+            return;
+        }
+
+        // 境界外にいるかチェック
+        if (to.getBlockX() < roomMin || to.getBlockX() > roomMax ||
+                to.getBlockZ() < roomMin || to.getBlockZ() > roomMax) {
+            transitions.outOfBounds(player, session, backroomLevel);
+            return;
+        }
+
+        // 出口（エメラルドブロック）のチェック - パフォーマンス向上のためメモリに保存
+        int blockX = to.getBlockX();
+        int blockY = to.getBlockY() - 1;
+        int blockZ = to.getBlockZ();
+
+        // 出口の位置をキャッシュしてチェックを繰り返さないようにする（参照時の割り当てなし）
+        ExitIndex exits = backroomLevel.exitIndex;
+        if (exits.contains(blockX, blockY, blockZ)) {
+            transitions.exit(player, session, backroomLevel);
+            return;
+        }
+
+        // 足元の種類は Block を作らずに直接読む
+        Material floor = backroomLevel.world.getType(blockX, blockY, blockZ);
+        if (floor == Material.EMERALD_BLOCK) {
+            exits.add(blockX, blockY, blockZ);
+            metrics.counter("exits_found.level" + backroomLevel.level).increment();
+            transitions.exit(player, session, backroomLevel);
+            return;
+        }
+
+        // 特殊な場所：次のレベルへの階段（最大深度でない場合）
+        if (backroomLevel.level < maxLevels - 1 && floor == Material.MOSSY_COBBLESTONE) {
+            transitions.descend(player, session, backroomLevel);
+        }
+    }
+
+    private void moveInOverworld(Player player, Location from, Location to) {
+        // 通常世界での移動を追跡
+        BackroomSession session = sessionResolver.apply(player);
+        if (session == null) {
+            return;
+        }
+
+        // XZ平面上の距離のみを計算（高さ変化を無視）
+        double dx = to.getX() - from.getX();
+        double dz = to.getZ() - from.getZ();
+        double distance = Math.sqrt(dx*dx + dz*dz);
+
+        // すべての移動をカウント（距離制限を撤廃）
+        double previous = session.distanceTraveled;
+        double totalDistance = previous + distance;
+        session.distanceTraveled = totalDistance;
+
+        // 保存は1ブロックごと（移動のたびには状態を作らない）
+        if ((int) totalDistance != (int) previous) {
+            store.capture(session);
+        }
+
+        // 警告メッセージを10ブロクから表示
+        if (totalDistance >= 10.0 && totalDistance < 11.0) {
+            player.sendMessage(ChatColor.GRAY + "【注意】現実の不安定性が増加しています... (" + String.format("%.1f", totalDistance) + "/15.0)");
+        }
+
+        // 15ブロック歩いたらバックルームに送る（20→15に変更）
+        if (totalDistance >= 15.0) {
+            // カウンターをリセット
+            session.distanceTraveled = 0.0;
+            store.capture(session);
+
+            // プレイヤーがオペレーターでない場合のみ（オプション）
+            if (!player.isOp()) {
+                // 88%の確率でバックルームに送る
+                if (random.nextDouble() < 0.88) {
+                    transitions.noclip(player, session);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package backroom.backroom;
+
+import org.bukkit.util.noise.SimplexOctaveGenerator;
+
+import java.util.Arrays;
+
+// 迷路用ノイズの粗い格子キャッシュ
+// ノイズのスケールは0.01で非常に滑らかなので、4ブロック間隔の格子点だけを評価して双線形補間する
+// （1チャンクあたり256回の評価が25回になる）
+final class NoiseField {
+
+    static final int STEP = 4; // 格子間隔
+    private static final int SAMPLES = 16 / STEP + 1;
+
+    private static final int CACHE_SIZE = 1024; // 1点ずつの補間で使う格子点キャッシュの大きさ（2のべき乗）
+
+    private final SimplexOctaveGenerator generator;
+
+    // 格子点の作業用バッファ（生成スレッドごと）
+    private final ThreadLocal<double[]> lattice = ThreadLocal.withInitial(() -> new double[SAMPLES * SAMPLES]);
+
+    // 1点ずつの補間用の格子点キャッシュ（スレッドごと、直接写像）
+    // 近くの列を続けて問い合わせると格子点を共有するので、ほとんどノイズを評価しない
+    private final ThreadLocal<LatticeCache> cache = ThreadLocal.withInitial(LatticeCache::new);
+
+    NoiseField(SimplexOctaveGenerator generator) {
+        this.generator = generator;
+    }
+
+    // 補間なしの値
+    double exact(int a, int b) {
+        return generator.noise(a, b, 0.5, 0.5, true);
+    }
+
+    // fillChunk と同じ格子点・同じ演算順で1点だけ補間する（チャンクの開始は格子間隔の倍数なので、結果はビット単位で一致する）
+    double interpolated(int a, int b) {
+        int a0 = a & -STEP;
+        int b0 = b & -STEP;
+        double fa = (a - a0) / (double) STEP;
+        double fb = (b - b0) / (double) STEP;
+
+        LatticeCache samples = cache.get();
+        double s00 = samples.get(this, a0, b0);
+        double s01 = samples.get(this, a0, b0 + STEP);
+        double s10 = samples.get(this, a0 + STEP, b0);
+        double s11 = samples.get(this, a0 + STEP, b0 + STEP);
+        double near = s00 + (s01 - s00) * fb;
+        double far = s10 + (s11 - s10) * fb;
+        return near + (far - near) * fa;
+    }
+
+    // out[offset + ((i << 4) | j)] に noise(aStart + i, bStart + j) の補間値を書き込む
+    void fillChunk(int aStart, int bStart, double[] out, int offset) {
+        double[] samples = lattice.get();
+        for (int i = 0; i < SAMPLES; i++) {
+            for (int j = 0; j < SAMPLES; j++) {
+                samples[i * SAMPLES + j] = exact(aStart + i * STEP, bStart + j * STEP);
+            }
+        }
+
+        for (int i = 0; i < 16; i++) {
+            int i0 = i / STEP;
+            double fi = (i % STEP) / (double) STEP;
+            for (int j = 0; j < 16; j++) {
+                int j0 = j / STEP;
+                double fj = (j % STEP) / (double) STEP;
+
+                double s00 = samples[i0 * SAMPLES + j0];
+                double s01 = samples[i0 * SAMPLES + j0 + 1];
+                double s10 = samples[(i0 + 1) * SAMPLES + j0];
+                double s11 = samples[(i0 + 1) * SAMPLES + j0 + 1];
+                double near = s00 + (s01 - s00) * fj;
+                double far = s10 + (s11 - s10) * fj;
+                out[offset + ((i << 4) | j)] = near + (far - near) * fi;
+            }
+        }
+    }
+
+    private static final class LatticeCache {
+        private static final long EMPTY = Long.MIN_VALUE; // 格子点 (-2^31, 0) は使われない
+
+        final long[] keys = new long[CACHE_SIZE];
+        final double[] values = new double[CACHE_SIZE];
+
+        LatticeCache() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        double get(NoiseField field, int a, int b) {
+            long key = ((long) a << 32) | (b & 0xFFFFFFFFL);
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 54) & (CACHE_SIZE - 1);
+            if (keys[slot] != key) {
+                keys[slot] = key;
+                values[slot] = field.exact(a, b);
+            }
+            return values[slot];
+        }
+    }
+}
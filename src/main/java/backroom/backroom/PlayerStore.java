@@ -0,0 +1,343 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// プレイヤーごとのバックルームの状態（レベル・移動距離・正気度）をデータフォルダの players.dat に保存する
+// ファイルは固定長のレコードを追記するだけのログで、同じプレイヤーの古いレコードは圧縮のときに捨てる
+// 所有するスレッドでは不変の状態を送信待ちに置くだけ（同じプレイヤーは最新だけが残る）。書き込みは非同期スレッドでまとめて行う
+// 起動時にログ全体を非同期で読んで索引を作り、参加時の読み込み（AsyncPlayerPreLoginEvent）はその完了を待つ
+// メインスレッドやリージョンのスレッドでは待たない（読み込みが終わっていなければ、終わったときに whenLoaded で知らせる）
+final class PlayerStore {
+
+    private static final int MAGIC = 0x42525053; // "BRPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 16 + 4 + 8 + 8; // UUID、レベル、移動距離、正気度
+    private static final long FLUSH_SECONDS = 5; // 書き込みの間隔
+    private static final int COMPACT_MIN_RECORDS = 4096; // これだけ追記するまでは圧縮しない
+    private static final long LOAD_TIMEOUT_SECONDS = 30; // 参加前の読み込みで索引の完了を待つ上限（非同期スレッド）
+
+    // 保存する状態（作成後は変更しない）
+    static final class State {
+        final int level;
+        final double distance;
+        final double sanity;
+
+        State(int level, double distance, double sanity) {
+            this.level = level;
+            this.distance = distance;
+            this.sanity = sanity;
+        }
+    }
+
+    private final Plugin plugin;
+    private final File file;
+    private final Logger logger;
+    private final Metrics metrics;
+    private final Metrics.Histogram flushTime;
+    private final Metrics.Counter written;
+
+    private final Map<UUID, State> index = new ConcurrentHashMap<>(); // ファイルに書き込み済みの最新の状態
+    private final Map<UUID, State> dirty = new ConcurrentHashMap<>(); // まだ書き込んでいない状態
+    private final Map<UUID, State> preloaded = new ConcurrentHashMap<>(); // 参加前に読んだ状態（参加時に取り出す）
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final List<Runnable> onLoaded = new ArrayList<>(); // 読み込みの完了を待っている処理（onLoaded で同期）
+
+    // 以下は書き込みスレッドのみ（synchronized）
+    private FileChannel channel; // 読み込みに失敗したら null（保存しない）
+    private int appended; // 前回の圧縮から追記したレコード数
+
+    PlayerStore(Plugin plugin, File file, Logger logger, Metrics metrics) {
+        this.plugin = plugin;
+        this.file = file;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.flushTime = metrics.histogram("store.flush");
+        this.written = metrics.counter("store.records");
+    }
+
+    // 非同期スレッドで索引を読み込み、その後は一定間隔で書き込む（止めるのはタスクのキャンセルと close）
+    void start() {
+        Bukkit.getAsyncScheduler().runNow(plugin, task -> loadIndex());
+        Bukkit.getAsyncScheduler().runAtFixedRate(plugin, task -> flush(),
+                FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // ログを読んで索引を作り、完了を待っていた処理を実行する（非同期スレッド）
+    void loadIndex() {
+        try {
+            load();
+        } finally {
+            List<Runnable> actions;
+            synchronized (onLoaded) {
+                loaded.countDown();
+                actions = new ArrayList<>(onLoaded);
+                onLoaded.clear();
+            }
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+    }
+
+    // AsyncPlayerPreLoginEvent から呼ぶ（非同期スレッド。読み込みが終わっていなければ待つ）
+    void preload(UUID playerId) {
+        awaitLoaded();
+        State state = lookup(playerId);
+        if (state != null) {
+            preloaded.put(playerId, state);
+        }
+    }
+
+    boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    // 索引の読み込みが終わったら action を実行する（終わっていればその場で。終わっていなければ読み込んだ非同期スレッドで）
+    void whenLoaded(Runnable action) {
+        synchronized (onLoaded) {
+            if (!isLoaded()) {
+                onLoaded.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    // 参加時にセッションへ戻す状態（無ければ null。待たないので、読み込みの完了後に呼ぶ）
+    // 参加前に読めていなかったとき（リロード時に接続していたプレイヤーなど）だけ索引を直接引く
+    State take(UUID playerId) {
+        State state = preloaded.remove(playerId);
+        return state != null || !isLoaded() ? state : lookup(playerId);
+    }
+
+    // 参加が取り消されたときや退出時に、取り出されなかった状態を捨てる
+    void forget(UUID playerId) {
+        preloaded.remove(playerId);
+    }
+
+    // 変化した状態を送信待ちに置く（プレイヤーを所有するスレッド。書き込みまでに何度呼ばれても最後の1つだけを書く）
+    // 保存された状態をまだ戻していないセッションは置かない（既定値で保存された状態を上書きしないように）
+    void capture(BackroomSession session) {
+        if (!session.stateLoaded) {
+            return;
+        }
+        dirty.put(session.playerId, new State(session.level, session.distanceTraveled, session.sanity));
+    }
+
+    // 送信待ちをすべて書き込んでファイルを閉じる（無効化時のメインスレッド。これ以降は書き込まない）
+    // 書き込みは接続中のプレイヤー分（1人 36 バイト）の1回だけで、ディスクへの同期と圧縮はしない
+    // （閉じた後は OS が書き出す。電源断で失われるのは最後の数秒分だけ）
+    synchronized void close() {
+        write(false);
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning(file.getName() + " を閉じられません: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private State lookup(UUID playerId) {
+        State state = dirty.get(playerId);
+        return state != null ? state : index.get(playerId);
+    }
+
+    private void awaitLoaded() {
+        try {
+            if (!loaded.await(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warning(file.getName() + " の読み込みが終わらないため、保存された状態を使わずに参加させます");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ログを先頭から読んで索引を作る（後のレコードが優先）
+    // 書き込みの途中で止まった末尾の不完全なレコードは切り捨てる
+    private synchronized void load() {
+        try {
+            File folder = file.getParentFile();
+            if (folder != null) {
+                folder.mkdirs();
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size == 0) {
+                writeHeader(channel);
+            } else if (!readHeader(channel)) {
+                // 知らない形式のファイルは残しておき、新しいファイルで始める
+                channel.close();
+                File bad = new File(file.getPath() + ".bad");
+                Files.move(file.toPath(), bad.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                logger.warning(file.getName() + " の形式が違うため " + bad.getName() + " に移して新しく作ります");
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                writeHeader(channel);
+            } else {
+                long records = (size - HEADER_SIZE) / RECORD_SIZE;
+                long valid = HEADER_SIZE + records * RECORD_SIZE;
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+                long position = HEADER_SIZE;
+                while (position < valid) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), valid - position));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                    buffer.flip();
+                    if (buffer.remaining() < RECORD_SIZE) {
+                        break;
+                    }
+                    while (buffer.remaining() >= RECORD_SIZE) {
+                        UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+                        index.put(playerId, new State(buffer.getInt(), buffer.getDouble(), buffer.getDouble()));
+                    }
+                    position += buffer.position();
+                }
+                if (valid < size) {
+                    channel.truncate(valid);
+                    logger.warning(file.getName() + " の末尾の不完全なレコードを切り捨てました");
+                }
+                appended = (int) Math.min(Integer.MAX_VALUE, records);
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            logger.warning(file.getName() + " を読み込めません（状態は保存されません）: " + e.getMessage());
+            channel = null;
+        }
+    }
+
+    // 送信待ちをまとめて追記し、1回だけディスクに同期する（非同期スレッド）
+    synchronized void flush() {
+        write(true);
+    }
+
+    // sync が false なら追記するだけ（同期も圧縮もしない）
+    private void write(boolean sync) {
+        if (channel == null || dirty.isEmpty()) {
+            return;
+        }
+        long start = metrics.start();
+        List<Map.Entry<UUID, State>> batch = new ArrayList<>(dirty.entrySet());
+        ByteBuffer buffer = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+        for (Map.Entry<UUID, State> entry : batch) {
+            putRecord(buffer, entry.getKey(), entry.getValue());
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            // 送信待ちは残して次の書き込みで再び試す
+            logger.warning(file.getName() + " に書き込めません: " + e.getMessage());
+            return;
+        }
+
+        // 書き込んだ後に変化していなければ送信待ちから外す（索引を先に更新して、読み込みが古い状態を見ないようにする）
+        for (Map.Entry<UUID, State> entry : batch) {
+            index.put(entry.getKey(), entry.getValue());
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+        appended += batch.size();
+        written.add(batch.size());
+        if (sync && appended > Math.max(COMPACT_MIN_RECORDS, index.size() * 2)) {
+            compact();
+        }
+        flushTime.recordSince(start);
+    }
+
+    // 索引の内容だけで一時ファイルを書き、置き換える（古いレコードを捨てる）
+    private void compact() {
+        File temp = new File(file.getPath() + ".tmp");
+        List<Map.Entry<UUID, State>> entries = new ArrayList<>(index.entrySet());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        for (Map.Entry<UUID, State> entry : entries) {
+            putRecord(buffer, entry.getKey(), entry.getValue());
+        }
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            logger.warning(file.getName() + " を圧縮できません: " + e.getMessage());
+            return;
+        }
+        try {
+            channel.close();
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning(file.getName() + " を置き換えられません: " + e.getMessage());
+        }
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            appended = entries.size();
+        } catch (IOException e) {
+            logger.warning(file.getName() + " を開き直せません（以降の状態は保存されません）: " + e.getMessage());
+            channel = null;
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, UUID playerId, State state) {
+        buffer.putLong(playerId.getMostSignificantBits());
+        buffer.putLong(playerId.getLeastSignificantBits());
+        buffer.putInt(state.level);
+        buffer.putDouble(state.distance);
+        buffer.putDouble(state.sanity);
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+    }
+
+    private static boolean readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+}
@@ -0,0 +1,169 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// データフォルダの prefabs/*.yml から読んだ部屋のテンプレート（オフィス、柱の間、プールなど）
+// ブロックはパレットの添字の配列に詰めて持ち、読み込み後は変更しない（生成スレッド間で共有する）
+// 添字 0 は「そのまま」（迷路の生成結果を残す）。$floor などのレベルの素材は PrefabLayout がレベルごとに解決する
+final class Prefab {
+
+    static final int MAX_SIZE = 64; // 1辺の上限（配置を探すチャンクの範囲が広がりすぎないように）
+
+    // レベルの素材を指すパレットの値
+    static final String[] LEVEL_TOKENS = {"$floor", "$wall", "$ceiling", "$light"};
+
+    final String name;
+    final int[] levels; // 置いてよいレベル（null ならすべて）
+    final double weight;
+    final int sizeX;
+    final int sizeY; // 層の数（層 0 が床の高さ）
+    final int sizeZ;
+    final String[] tokens; // パレットの値（添字 0 は null）
+    final BlockData[] palette; // 固定のブロック（添字 0 とレベルの素材は null）
+    final byte[] blocks; // (y * sizeZ + z) * sizeX + x の順
+
+    private Prefab(String name, int[] levels, double weight, int sizeX, int sizeY, int sizeZ,
+                   String[] tokens, BlockData[] palette, byte[] blocks) {
+        this.name = name;
+        this.levels = levels;
+        this.weight = weight;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.tokens = tokens;
+        this.palette = palette;
+        this.blocks = blocks;
+    }
+
+    int index(int x, int y, int z) {
+        return (y * sizeZ + z) * sizeX + x;
+    }
+
+    boolean allowsLevel(int level) {
+        if (levels == null) {
+            return true;
+        }
+        for (int allowed : levels) {
+            if (allowed == level) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // フォルダ内のテンプレートをファイル名順に読む（順序は配置の選択に使うので固定する）
+    // 読めないファイルは警告して飛ばす
+    static List<Prefab> loadAll(File folder, Logger logger) {
+        List<Prefab> prefabs = new ArrayList<>();
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files == null) {
+            return prefabs;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            Prefab prefab = load(file, logger);
+            if (prefab != null) {
+                prefabs.add(prefab);
+            }
+        }
+        return prefabs;
+    }
+
+    // levels: [0, 1]（省略可）、weight: 1.0、palette: {文字: 素材やブロックデータ}、layers: 下の層から順に行の並び
+    // 行が z、行内の文字が x。パレットに無い文字と空白は「そのまま」
+    private static Prefab load(File file, Logger logger) {
+        String name = file.getName().substring(0, file.getName().length() - ".yml".length());
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+
+        // パレット（文字 -> 添字）
+        Map<Character, Integer> indices = new LinkedHashMap<>();
+        List<String> tokens = new ArrayList<>();
+        List<BlockData> palette = new ArrayList<>();
+        tokens.add(null);
+        palette.add(null);
+        ConfigurationSection section = yaml.getConfigurationSection("palette");
+        if (section != null) {
+            // "." などの文字はパスの区切りと重なるので、パスで引かずに値の一覧から読む
+            for (Map.Entry<String, Object> entry : section.getValues(false).entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue() == null ? null : String.valueOf(entry.getValue());
+                if (key.length() != 1 || value == null) {
+                    logger.warning("テンプレート " + name + " のパレット " + key + " を読めません（1文字のキーと値が必要です）");
+                    continue;
+                }
+                BlockData data = null;
+                if (!Arrays.asList(LEVEL_TOKENS).contains(value)) {
+                    try {
+                        data = Bukkit.createBlockData(value);
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("テンプレート " + name + " のブロック " + value + " が見つかりません");
+                        continue;
+                    }
+                }
+                if (tokens.size() > Byte.MAX_VALUE) {
+                    logger.warning("テンプレート " + name + " のパレットが多すぎます（" + Byte.MAX_VALUE + " 種類まで）");
+                    break;
+                }
+                indices.put(key.charAt(0), tokens.size());
+                tokens.add(value);
+                palette.add(data);
+            }
+        }
+
+        List<String> layers = yaml.getStringList("layers");
+        int sizeY = layers.size();
+        int sizeX = 0;
+        int sizeZ = 0;
+        List<String[]> rows = new ArrayList<>();
+        for (String layer : layers) {
+            String[] lines = layer.split("\n");
+            rows.add(lines);
+            sizeZ = Math.max(sizeZ, lines.length);
+            for (String line : lines) {
+                sizeX = Math.max(sizeX, line.length());
+            }
+        }
+        if (sizeX == 0 || sizeZ == 0) {
+            logger.warning("テンプレート " + name + " に層がありません");
+            return null;
+        }
+        if (sizeX > MAX_SIZE || sizeZ > MAX_SIZE) {
+            logger.warning("テンプレート " + name + " が大きすぎます（1辺 " + MAX_SIZE + " ブロックまで）");
+            return null;
+        }
+
+        // 文字をパレットの添字に変換して詰める（足りない行や列は「そのまま」）
+        byte[] blocks = new byte[sizeX * sizeY * sizeZ];
+        for (int y = 0; y < sizeY; y++) {
+            String[] lines = rows.get(y);
+            for (int z = 0; z < lines.length; z++) {
+                String line = lines[z];
+                for (int x = 0; x < line.length(); x++) {
+                    Integer index = indices.get(line.charAt(x));
+                    if (index != null) {
+                        blocks[(y * sizeZ + z) * sizeX + x] = (byte) (int) index;
+                    }
+                }
+            }
+        }
+
+        int[] levels = null;
+        if (yaml.isList("levels")) {
+            levels = yaml.getIntegerList("levels").stream().mapToInt(Integer::intValue).toArray();
+        }
+        double weight = Math.max(0.0, yaml.getDouble("weight", 1.0));
+        return new Prefab(name, levels, weight, sizeX, sizeY, sizeZ,
+                tokens.toArray(new String[0]), palette.toArray(new BlockData[0]), blocks);
+    }
+}
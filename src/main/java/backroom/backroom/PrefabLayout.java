@@ -0,0 +1,190 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+// 部屋のテンプレートをどこに置くか（1レベルにつき1つ、チャンクを読まない）
+// チャンクごとにハッシュ乱数で「このチャンクを起点に置くか、どれを置くか」を決めるので、生成順やスレッドに依存しない
+// 起点は起点チャンク内の最初の格子の線に合わせる。テンプレートは隣のチャンクにはみ出してよく、
+// 各チャンクの populator は自分に重なる起点をすべて調べて、自分の範囲だけを書き込む
+// 構築後は読み取り専用なので、生成スレッドと LayoutOracle の問い合わせで共有できる
+final class PrefabLayout {
+
+    // 列ごとの情報（LayoutOracle の問い合わせ用）
+    static final byte COLUMN_FLOOR = 1; // 床を書き換える
+    static final byte COLUMN_BLOCKED = 2; // 立てない（床が固体でない、または足元から2ブロックに何か置く）
+
+    private static final Prefab[] NO_PREFABS = new Prefab[0];
+
+    private final long seed;
+    private final int period;
+    private final double chance; // チャンクが起点になる確率
+    final int baseY;
+    final Prefab[] prefabs; // このレベルに置けるテンプレート
+    final BlockData[][] palettes; // テンプレートごとのパレット（レベルの素材を解決済み）
+    private final byte[][] columns; // テンプレートごとの列の情報（z * sizeX + x）
+    final int[][] lights; // テンプレートごとの照明の位置（blocks の添字。点滅用インデックスに加える）
+    final int[] lightHeights; // テンプレートの照明が置かれる高さ（ワールド座標。読み込み時の走査に加える）
+    private final double[] cumulativeWeights;
+    final int reach; // 起点から何チャンク先まではみ出すか
+
+    // テンプレートなし
+    PrefabLayout(LevelConfig config) {
+        this(config, new ArrayList<>());
+    }
+
+    PrefabLayout(LevelConfig config, List<Prefab> all) {
+        this.seed = config.seed;
+        this.period = config.gridPeriod;
+        this.baseY = config.baseY;
+
+        List<Prefab> allowed = new ArrayList<>();
+        for (Prefab prefab : all) {
+            if (prefab.allowsLevel(config.level) && prefab.weight > 0.0) {
+                allowed.add(prefab);
+            }
+        }
+        this.prefabs = allowed.isEmpty() ? NO_PREFABS : allowed.toArray(new Prefab[0]);
+        this.chance = prefabs.length == 0 ? 0.0 : config.prefabChance;
+
+        this.palettes = new BlockData[prefabs.length][];
+        this.columns = new byte[prefabs.length][];
+        this.lights = new int[prefabs.length][];
+        this.cumulativeWeights = new double[prefabs.length];
+        TreeSet<Integer> heights = new TreeSet<>();
+        int maxSize = 1;
+        double total = 0.0;
+        for (int i = 0; i < prefabs.length; i++) {
+            Prefab prefab = prefabs[i];
+            palettes[i] = resolve(prefab, config);
+            columns[i] = columns(prefab, palettes[i]);
+            lights[i] = lights(prefab, palettes[i], config);
+            for (int index : lights[i]) {
+                heights.add(baseY + index / (prefab.sizeX * prefab.sizeZ));
+            }
+            total += prefab.weight;
+            cumulativeWeights[i] = total;
+            maxSize = Math.max(maxSize, Math.max(prefab.sizeX, prefab.sizeZ));
+        }
+        this.reach = (period - 1 + maxSize - 1) >> 4;
+        this.lightHeights = chance <= 0.0
+                ? new int[0]
+                : heights.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    boolean isEmpty() {
+        return chance <= 0.0;
+    }
+
+    // 起点チャンクに置くテンプレートの添字（置かなければ -1）
+    int prefabAt(int anchorChunkX, int anchorChunkZ) {
+        if (chance <= 0.0
+                || ColumnRandom.nextDouble(seed, anchorChunkX, anchorChunkZ, LayoutOracle.SALT_PREFAB) >= chance) {
+            return -1;
+        }
+        double pick = ColumnRandom.nextDouble(seed, anchorChunkX, anchorChunkZ, LayoutOracle.SALT_PREFAB_KIND)
+                * cumulativeWeights[cumulativeWeights.length - 1];
+        for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    // 起点チャンク内の最初の格子の線（x と z で共通）
+    int origin(int anchorChunk) {
+        int start = anchorChunk * 16;
+        return start + Math.floorMod(-start, period);
+    }
+
+    // 列に重なるテンプレートの情報（複数あれば論理和）
+    int column(int x, int z) {
+        if (isEmpty()) {
+            return 0;
+        }
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        int flags = 0;
+        for (int anchorX = chunkX - reach; anchorX <= chunkX; anchorX++) {
+            for (int anchorZ = chunkZ - reach; anchorZ <= chunkZ; anchorZ++) {
+                int kind = prefabAt(anchorX, anchorZ);
+                if (kind < 0) {
+                    continue;
+                }
+                Prefab prefab = prefabs[kind];
+                int localX = x - origin(anchorX);
+                int localZ = z - origin(anchorZ);
+                if (localX >= 0 && localX < prefab.sizeX && localZ >= 0 && localZ < prefab.sizeZ) {
+                    flags |= columns[kind][localZ * prefab.sizeX + localX];
+                }
+            }
+        }
+        return flags;
+    }
+
+    private static BlockData[] resolve(Prefab prefab, LevelConfig config) {
+        BlockData[] palette = prefab.palette.clone();
+        for (int i = 1; i < palette.length; i++) {
+            if (palette[i] == null) {
+                palette[i] = levelMaterial(prefab.tokens[i], config).createBlockData();
+            }
+        }
+        return palette;
+    }
+
+    private static Material levelMaterial(String token, LevelConfig config) {
+        switch (token) {
+            case "$floor":
+                return config.floorMaterial;
+            case "$wall":
+                return config.wallMaterial;
+            case "$ceiling":
+                return config.ceilingMaterial;
+            default:
+                return config.lightMaterial;
+        }
+    }
+
+    // レベルの照明と同じ素材のブロック（$light と、同じ素材を直接書いたもの）
+    private static int[] lights(Prefab prefab, BlockData[] palette, LevelConfig config) {
+        int[] found = new int[prefab.blocks.length];
+        int count = 0;
+        for (int index = 0; index < prefab.blocks.length; index++) {
+            int block = prefab.blocks[index];
+            if (block != 0 && palette[block].getMaterial() == config.lightMaterial) {
+                found[count++] = index;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static byte[] columns(Prefab prefab, BlockData[] palette) {
+        byte[] columns = new byte[prefab.sizeX * prefab.sizeZ];
+        for (int z = 0; z < prefab.sizeZ; z++) {
+            for (int x = 0; x < prefab.sizeX; x++) {
+                byte flags = 0;
+                int floor = prefab.blocks[prefab.index(x, 0, z)];
+                if (floor != 0) {
+                    flags |= COLUMN_FLOOR;
+                    if (!palette[floor].getMaterial().isSolid()) {
+                        flags |= COLUMN_BLOCKED;
+                    }
+                }
+                for (int y = 1; y <= 2 && y < prefab.sizeY; y++) {
+                    int block = prefab.blocks[prefab.index(x, y, z)];
+                    if (block != 0 && !palette[block].getMaterial().isAir()) {
+                        flags |= COLUMN_BLOCKED;
+                    }
+                }
+                columns[z * prefab.sizeX + x] = flags;
+            }
+        }
+        return columns;
+    }
+}
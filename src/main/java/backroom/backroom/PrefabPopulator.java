@@ -0,0 +1,100 @@
+package backroom.backroom;
+
+import org.bukkit.block.data.BlockData;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// 迷路の生成後に部屋のテンプレートを押し付ける（ワールド生成スレッドで並行して呼ばれる）
+// 置き場所は PrefabLayout がチャンク座標から決め、ここでは配列をそのまま LimitedRegion に写す（列ごとの規則は評価しない）
+// 渡される Random は使わない（生成順に依存しないように）
+final class PrefabPopulator extends BlockPopulator {
+
+    private final PrefabLayout layout;
+    private final LightIndex lightIndex;
+    private final Metrics metrics;
+    private final Metrics.Histogram populateTime;
+
+    PrefabPopulator(PrefabLayout layout, LightIndex lightIndex, int level, Metrics metrics) {
+        this.layout = layout;
+        this.lightIndex = lightIndex;
+        this.metrics = metrics;
+        this.populateTime = metrics.histogram("prefab.level" + level);
+    }
+
+    @Override
+    public void populate(WorldInfo worldInfo, Random random, int chunkX, int chunkZ, LimitedRegion region) {
+        long start = metrics.start();
+        int minY = worldInfo.getMinHeight();
+        int maxY = worldInfo.getMaxHeight();
+        int reach = layout.reach;
+        int[] lights = null; // このチャンクに置いた照明（テンプレートが重なったときだけ作る）
+        int lightCount = 0;
+
+        // このチャンクに重なり得る起点を固定の順に調べる（重なったテンプレートは後の起点が優先）
+        for (int anchorX = chunkX - reach; anchorX <= chunkX; anchorX++) {
+            for (int anchorZ = chunkZ - reach; anchorZ <= chunkZ; anchorZ++) {
+                int kind = layout.prefabAt(anchorX, anchorZ);
+                if (kind < 0) {
+                    continue;
+                }
+                Prefab prefab = layout.prefabs[kind];
+                int originX = layout.origin(anchorX);
+                int originZ = layout.origin(anchorZ);
+                stamp(region, prefab, layout.palettes[kind], originX, originZ, chunkX, chunkZ, minY, maxY);
+
+                // 置いた照明を点滅用インデックスに加える
+                for (int index : layout.lights[kind]) {
+                    int x = originX + index % prefab.sizeX;
+                    int z = originZ + (index / prefab.sizeX) % prefab.sizeZ;
+                    int y = layout.baseY + index / (prefab.sizeX * prefab.sizeZ);
+                    if (x >> 4 != chunkX || z >> 4 != chunkZ || y < minY || y >= maxY) {
+                        continue;
+                    }
+                    if (lights == null) {
+                        lights = new int[16];
+                    } else if (lightCount == lights.length) {
+                        lights = Arrays.copyOf(lights, lightCount * 2);
+                    }
+                    lights[lightCount++] = LightIndex.pack(x & 15, y, z & 15);
+                }
+            }
+        }
+        if (lightCount > 0) {
+            lightIndex.add(chunkX, chunkZ, lights, lightCount);
+        }
+        populateTime.recordSince(start);
+    }
+
+    // テンプレートのうちこのチャンクに入る範囲だけを書き込む（添字 0 は迷路をそのまま残す）
+    private void stamp(LimitedRegion region, Prefab prefab, BlockData[] palette, int originX, int originZ,
+                       int chunkX, int chunkZ, int minY, int maxY) {
+        int fromX = Math.max(0, chunkX * 16 - originX);
+        int toX = Math.min(prefab.sizeX, chunkX * 16 + 16 - originX);
+        int fromZ = Math.max(0, chunkZ * 16 - originZ);
+        int toZ = Math.min(prefab.sizeZ, chunkZ * 16 + 16 - originZ);
+        int fromY = Math.max(0, minY - layout.baseY);
+        int toY = Math.min(prefab.sizeY, maxY - layout.baseY);
+        if (fromX >= toX || fromZ >= toZ) {
+            return;
+        }
+
+        byte[] blocks = prefab.blocks;
+        for (int y = fromY; y < toY; y++) {
+            int worldY = layout.baseY + y;
+            for (int z = fromZ; z < toZ; z++) {
+                int row = prefab.index(0, y, z);
+                int worldZ = originZ + z;
+                for (int x = fromX; x < toX; x++) {
+                    int block = blocks[row + x];
+                    if (block != 0) {
+                        region.setBlockData(originX + x, worldY, worldZ, palette[block]);
+                    }
+                }
+            }
+        }
+    }
+}
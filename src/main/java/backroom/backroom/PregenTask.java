@@ -0,0 +1,268 @@
+package backroom.backroom;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.logging.Level;
+
+// バックルームのチャンクの事前生成（同時に1つだけ実行する）
+// 原点から渦巻き状に getChunkAtAsync で生成するので、スポーン付近から順に温まる
+// 同時に生成を依頼するチャンク数はサーバーの MSPT に合わせて絞り、進捗は小さなチェックポイントファイルに保存する
+final class PregenTask {
+
+    private static final long SAVE_INTERVAL_TICKS = 600; // 30秒ごとにチェックポイントを保存
+    private static final long REPORT_INTERVAL_NANOS = 30_000_000_000L; // 30秒ごとに進捗をログに出す
+
+    final int level;
+    final int radius; // ブロック単位（原点を中心とした正方形の半分の幅）
+
+    private final Plugin plugin;
+    private final File checkpointFile;
+    private final World world;
+    private final int maxInFlight;
+    private final double msptLimit;
+    private final long total; // 生成するチャンク数
+
+    // 渦巻きの状態（次に生成を依頼するチャンク）
+    private int chunkX;
+    private int chunkZ;
+    private int dirX = 1;
+    private int dirZ;
+    private int segmentLength = 1;
+    private int segmentPassed;
+    private long launched;
+
+    // ここより前の渦巻きの位置はすべて生成済み（チェックポイントに保存する値）
+    private long checkpoint;
+    private BitSet completedAhead = new BitSet(); // checkpoint より後で先に完了した位置（checkpoint からの相対）
+    private int inFlight;
+    private long failed;
+
+    private boolean paused;
+    private boolean stopped;
+    private boolean dirty;
+    private long ticks;
+    private long startNanos;
+    private long startCheckpoint;
+    private long lastReportNanos;
+    private ScheduledTask task;
+
+    PregenTask(Plugin plugin, File checkpointFile, World world, int level, int radius,
+               int maxInFlight, double msptLimit, long resumeFrom, boolean paused) {
+        this.plugin = plugin;
+        this.checkpointFile = checkpointFile;
+        this.world = world;
+        this.level = level;
+        this.radius = radius;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.msptLimit = msptLimit;
+        long side = 2L * ((radius + 15) >> 4) + 1;
+        this.total = side * side;
+        this.paused = paused;
+
+        // 再開時はチェックポイントの位置まで渦巻きを進める（チャンクは読まない）
+        long skip = Math.min(resumeFrom, total);
+        for (long i = 0; i < skip; i++) {
+            advance();
+        }
+        this.launched = skip;
+        this.checkpoint = skip;
+    }
+
+    // チェックポイントファイルから再開する（無ければ null）
+    static PregenTask resume(Plugin plugin, File checkpointFile, BackroomLevel[] levels,
+                             int maxInFlight, double msptLimit) {
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(checkpointFile);
+        int level = yaml.getInt("level");
+        if (level < 0 || level >= levels.length || levels[level].world == null) {
+            plugin.getLogger().warning("事前生成のチェックポイントのレベル " + level + " が利用できないため再開しません");
+            return null;
+        }
+        return new PregenTask(plugin, checkpointFile, levels[level].world, level, yaml.getInt("radius"),
+                maxInFlight, msptLimit, yaml.getLong("next"), yaml.getBoolean("paused"));
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        startCheckpoint = checkpoint;
+        save();
+        task = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, scheduled -> tick(), 1, 1);
+        plugin.getLogger().info("事前生成を開始: " + describe());
+    }
+
+    synchronized boolean isRunning() {
+        return !stopped;
+    }
+
+    synchronized void pause() {
+        paused = true;
+        save();
+    }
+
+    synchronized void resume() {
+        paused = false;
+        save();
+    }
+
+    // 中止してチェックポイントを削除する
+    synchronized void stop() {
+        stopped = true;
+        if (task != null) {
+            task.cancel();
+        }
+        deleteCheckpoint();
+    }
+
+    // プラグインの無効化時：チェックポイントを残して止める
+    synchronized void shutdown() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        if (task != null) {
+            task.cancel();
+        }
+        save();
+    }
+
+    // グローバルリージョンのスケジューラから毎ティック呼ばれる
+    synchronized void tick() {
+        if (stopped) {
+            return;
+        }
+        ticks++;
+
+        if (!paused) {
+            int allowed = allowedInFlight();
+            while (inFlight < allowed && launched < total) {
+                long index = launched++;
+                int x = chunkX;
+                int z = chunkZ;
+                advance();
+                inFlight++;
+                world.getChunkAtAsync(x, z, true).whenComplete((chunk, error) -> complete(index, error));
+            }
+        }
+
+        if (checkpoint >= total) {
+            finish();
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (!paused && now - lastReportNanos >= REPORT_INTERVAL_NANOS) {
+            lastReportNanos = now;
+            plugin.getLogger().info("事前生成: " + describe());
+        }
+        if (dirty && ticks % SAVE_INTERVAL_TICKS == 0) {
+            save();
+        }
+    }
+
+    // 読み込みが終わったスレッドから呼ばれる（Paper ではメインスレッド、Folia ではチャンクのリージョン）
+    private synchronized void complete(long index, Throwable error) {
+        inFlight--;
+        if (error != null) {
+            failed++;
+        }
+        completedAhead.set((int) (index - checkpoint));
+        int advanced = completedAhead.nextClearBit(0);
+        if (advanced > 0) {
+            checkpoint += advanced;
+            completedAhead = completedAhead.get(advanced, Math.max(advanced, completedAhead.length()));
+            dirty = true;
+        }
+    }
+
+    private void finish() {
+        stopped = true;
+        if (task != null) {
+            task.cancel();
+        }
+        deleteCheckpoint();
+        long seconds = (System.nanoTime() - startNanos) / 1_000_000_000L;
+        plugin.getLogger().info("事前生成が完了しました: レベル " + level + " / " + total + " チャンク / "
+                + seconds + "秒 / 失敗 " + failed);
+    }
+
+    // MSPT が上限に近づいたら同時に生成するチャンクを減らし、上限を超えたら新しく依頼しない
+    private int allowedInFlight() {
+        double mspt = currentMspt();
+        if (mspt >= msptLimit) {
+            return 0;
+        }
+        if (mspt >= msptLimit * 0.75) {
+            return Math.max(1, maxInFlight / 4);
+        }
+        return maxInFlight;
+    }
+
+    // Folia ではサーバー全体の MSPT が無いので、同時生成数の上限だけで絞る
+    private static double currentMspt() {
+        try {
+            return Bukkit.getAverageTickTime();
+        } catch (UnsupportedOperationException e) {
+            return 0.0;
+        }
+    }
+
+    // 正方形の渦巻きで次の位置へ（n 歩目までで (2r+1)^2 の正方形をちょうど埋める）
+    private void advance() {
+        chunkX += dirX;
+        chunkZ += dirZ;
+        if (++segmentPassed == segmentLength) {
+            segmentPassed = 0;
+            int turn = dirX;
+            dirX = -dirZ;
+            dirZ = turn;
+            if (dirZ == 0) {
+                segmentLength++;
+            }
+        }
+    }
+
+    // 生成済みが保証された渦巻きの位置の数（チェックポイントに保存する値）
+    synchronized long checkpoint() {
+        return checkpoint;
+    }
+
+    synchronized String describe() {
+        double percent = total == 0 ? 100.0 : checkpoint * 100.0 / total;
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        double rate = seconds > 0 ? (checkpoint - startCheckpoint) / seconds : 0.0;
+        String eta = rate > 0 ? String.format("%.0f分", (total - checkpoint) / rate / 60) : "-";
+        return String.format("レベル %d 半径 %d: %d/%d チャンク (%.1f%%) / %.1f チャンク/秒 / 残り %s / 生成中 %d / 失敗 %d / MSPT %.1f%s",
+                level, radius, checkpoint, total, percent, rate, eta, inFlight, failed, currentMspt(),
+                paused ? " / 一時停止中" : "");
+    }
+
+    private void save() {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("level", level);
+        yaml.set("radius", radius);
+        yaml.set("next", checkpoint);
+        yaml.set("paused", paused);
+        try {
+            yaml.save(checkpointFile);
+            dirty = false;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "事前生成のチェックポイントを保存できません", e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            plugin.getLogger().warning("事前生成のチェックポイントを削除できません: " + checkpointFile);
+        }
+    }
+}
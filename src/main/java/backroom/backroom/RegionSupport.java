@@ -0,0 +1,35 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+// Folia（リージョンごとのスレッドでティックするサーバー）への対応
+// Paper のスケジューラ API は通常の Paper でも動く（メインスレッドで実行される）ので、
+// 実行場所が問題になる処理はここを通して、どちらのサーバーでも同じコードで動かす
+final class RegionSupport {
+
+    // Folia ではワールドの作成やグローバルなプレイヤー走査ができない
+    static final boolean FOLIA = detectFolia();
+
+    private RegionSupport() {
+    }
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // エンティティを所有するスレッドで実行する（既にそのスレッドならその場で実行）
+    static void runFor(Plugin plugin, Entity entity, Runnable task) {
+        if (Bukkit.isOwnedByCurrentRegion(entity)) {
+            task.run();
+        } else {
+            entity.getScheduler().run(plugin, scheduled -> task.run(), null);
+        }
+    }
+}
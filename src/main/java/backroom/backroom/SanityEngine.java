@@ -0,0 +1,319 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 正気度の計算（バックルームにいる時間、点滅した照明の近く、レベルの深さ、近くに他のプレイヤーがいないかで減る）
+// プレイヤーを所有するスレッドでは効果ホイールから1秒ごとに位置などを不変のサンプルとして置くだけにし、
+// 計算は非同期スレッドで全員分をまとめて行う（近くのプレイヤーの数え上げもここ。移動イベントでは何もしない）
+// 結果は正気度の差分と起こす効果としてセッションに置き、次のサンプルのときに所有するスレッドで反映する
+final class SanityEngine {
+
+    static final double MAX_SANITY = 100.0;
+
+    private static final long INTERVAL_SECONDS = 1; // 計算の間隔（サンプルの周期と同じ）
+    private static final double MAX_STEP_SECONDS = 5.0; // 1回に進める時間の上限（サンプルが途切れていた間は数えない）
+    private static final long STALE_NANOS = TimeUnit.SECONDS.toNanos(3); // これより古いサンプルは近くのプレイヤーに数えない
+
+    // 1秒あたりの減少量
+    private static final double BASE_DECAY = 0.05; // 基準（これだけなら約33分で0になる）
+    private static final double DEPTH_DECAY = 0.5; // レベルが1つ深くなるごとに基本の減少量に足す割合
+    private static final double DARK_DECAY = 0.3; // 点滅した照明の近くにいる間に足す量
+    private static final double ALONE_FACTOR = 1.5; // 近くに誰もいないときの倍率
+    private static final double COMPANION_RELIEF = 0.25; // 近くのプレイヤー1人ごとに減少を和らげる割合（4人まで）
+    private static final int NEIGHBOR_RANGE = 24; // 近くとみなす距離（ブロック）
+    private static final int GRID_SHIFT = 5; // 近くのプレイヤーを探す格子（32ブロック）
+
+    // 正気度が低いときに起こす効果（1秒ごとの確率）
+    static final int ACTION_WHISPER = 1;
+    static final int ACTION_DARKNESS = 2;
+    static final int ACTION_NAUSEA = 4;
+    private static final double WHISPER_BELOW = 50.0;
+    private static final double WHISPER_CHANCE = 0.15;
+    private static final double DARKNESS_BELOW = 25.0;
+    private static final double DARKNESS_CHANCE = 0.1;
+    private static final double NAUSEA_BELOW = 10.0;
+    private static final double NAUSEA_CHANCE = 0.1;
+
+    // 下回ったときに知らせる正気度
+    private static final int[] THRESHOLDS = {75, 50, 25, 0};
+
+    private static final PotionEffect DARKNESS_PULSE = new PotionEffect(PotionEffectType.DARKNESS, 60, 0, false, false);
+    private static final PotionEffect SANITY_NAUSEA = new PotionEffect(PotionEffectType.NAUSEA, 100, 0, false, false);
+
+    // 所有するスレッドで取ったプレイヤーの状態（作成後は変更しない）
+    static final class Sample {
+        final BackroomSession session;
+        final int level;
+        final int x;
+        final int z;
+        final boolean dark; // 点滅した照明の近くにいるか
+        final double sanity;
+        final int epoch; // セッションの正気度をリセットした回数（古い結果を捨てるため）
+        final long nanos;
+
+        Sample(BackroomSession session, int level, int x, int z, boolean dark, double sanity, int epoch, long nanos) {
+            this.session = session;
+            this.level = level;
+            this.x = x;
+            this.z = z;
+            this.dark = dark;
+            this.sanity = sanity;
+            this.epoch = epoch;
+            this.nanos = nanos;
+        }
+    }
+
+    // 非同期スレッドの計算結果（反映される前に次の結果が出たら足し合わせる）
+    static final class Result {
+        final double delta;
+        final int actions;
+        final int epoch;
+
+        Result(double delta, int actions, int epoch) {
+            this.delta = delta;
+            this.actions = actions;
+            this.epoch = epoch;
+        }
+
+        Result plus(Result next) {
+            if (next.epoch != epoch) {
+                return next;
+            }
+            return new Result(delta + next.delta, actions | next.actions, epoch);
+        }
+    }
+
+    private final Plugin plugin;
+    private final SessionTable sessions;
+    private final EffectQueue effects;
+    private final FlickerEngine flickerEngine; // 点滅が無効なら null
+    private final PlayerStore store;
+    private final Function<Player, BackroomSession> sessionResolver;
+    private final double difficultyScaling;
+    private final Metrics metrics;
+    private final Metrics.Histogram batchTime;
+    private final Metrics.Counter applied;
+
+    // 直近の計算の集計（/backroom stats 用）
+    private volatile int lastPlayers;
+    private volatile double lastAverage = MAX_SANITY;
+    private volatile double lastMinimum = MAX_SANITY;
+
+    SanityEngine(Plugin plugin, SessionTable sessions, EffectQueue effects, FlickerEngine flickerEngine,
+                 PlayerStore store, Function<Player, BackroomSession> sessionResolver, double difficultyScaling,
+                 Metrics metrics) {
+        this.plugin = plugin;
+        this.sessions = sessions;
+        this.effects = effects;
+        this.flickerEngine = flickerEngine;
+        this.store = store;
+        this.sessionResolver = sessionResolver;
+        this.difficultyScaling = Math.max(0.0, difficultyScaling);
+        this.metrics = metrics;
+        this.batchTime = metrics.histogram("sanity.batch");
+        this.applied = metrics.counter("sanity.applied");
+    }
+
+    // 非同期スレッドでの計算を始める（止めるのはプラグインの無効化でのタスクのキャンセル）
+    void start() {
+        Bukkit.getAsyncScheduler().runAtFixedRate(plugin, task -> simulate(),
+                INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // 効果ホイールから1秒ごとに呼ばれる（プレイヤーを所有するスレッド）
+    // 前回の計算結果を反映してから、次の計算のためのサンプルを置く
+    void sample(Player player, BackroomLevel level) {
+        BackroomSession session = sessionResolver.apply(player);
+        if (session == null) {
+            return;
+        }
+        Result result = session.sanityResult.getAndSet(null);
+        if (result != null && result.epoch == session.sanityEpoch) {
+            apply(session, result);
+        }
+
+        Location loc = player.getLocation();
+        int x = loc.getBlockX();
+        int z = loc.getBlockZ();
+        long now = System.currentTimeMillis();
+        boolean dark = flickerEngine != null && flickerEngine.isDark(level.world,
+                FlickerEngine.cellKey(x >> FlickerEngine.CELL_SHIFT, z >> FlickerEngine.CELL_SHIFT), now);
+        session.sanitySample = new Sample(session, level.level, x, z, dark, session.sanity, session.sanityEpoch,
+                System.nanoTime());
+    }
+
+    // 現実に戻ったときに正気度を戻す（プレイヤーを所有するスレッド）
+    // 計算中の結果は古い回数を持つので、反映されずに捨てられる
+    void reset(BackroomSession session) {
+        session.sanity = MAX_SANITY;
+        session.sanityEpoch++;
+        session.sanitySample = null;
+        session.sanityResult.set(null);
+    }
+
+    List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("正気度: %d 人、平均 %.1f、最低 %.1f（難易度 x%.2f）",
+                lastPlayers, lastAverage, lastMinimum, difficultyScaling));
+        return lines;
+    }
+
+    private void apply(BackroomSession session, Result result) {
+        double before = session.sanity;
+        double after = Math.max(0.0, Math.min(MAX_SANITY, before + result.delta));
+        session.sanity = after;
+        applied.increment();
+        if ((int) before != (int) after) {
+            store.capture(session); // 保存は1ずつ
+        }
+
+        // 下回った閾値ごとに1回だけ知らせる
+        for (int threshold : THRESHOLDS) {
+            if (before > threshold && after <= threshold) {
+                effects.message(session, thresholdMessage(threshold));
+            }
+        }
+        if ((result.actions & ACTION_WHISPER) != 0) {
+            effects.sound(session, Sound.AMBIENT_CAVE, 0.4f, 0.5f);
+        }
+        if ((result.actions & ACTION_DARKNESS) != 0) {
+            effects.potion(session, DARKNESS_PULSE);
+        }
+        if ((result.actions & ACTION_NAUSEA) != 0) {
+            effects.potion(session, SANITY_NAUSEA);
+        }
+    }
+
+    private static String thresholdMessage(int threshold) {
+        switch (threshold) {
+            case 75:
+                return ChatColor.YELLOW + "【精神状態】蛍光灯の音が頭から離れません...";
+            case 50:
+                return ChatColor.GOLD + "【精神状態】壁の向こうから囁き声が聞こえる気がします。";
+            case 25:
+                return ChatColor.RED + "【精神状態】視界の端で何かが動いています。正気度が危険な水準です。";
+            default:
+                return ChatColor.DARK_RED + "【精神状態】正気度が尽きました。ここから出なければなりません。";
+        }
+    }
+
+    // 非同期スレッドで1秒ごとに全員分をまとめて計算する
+    // 前回処理したサンプル（sanityProcessed）はこのスレッドだけが読み書きする
+    synchronized void simulate() {
+        long start = metrics.start();
+        long now = System.nanoTime();
+
+        // 新しいサンプルと、近くのプレイヤーとして数えるサンプルの格子（レベルごと）
+        List<Sample> fresh = new ArrayList<>();
+        Map<Integer, Map<Long, List<Sample>>> grids = new HashMap<>();
+        int players = 0;
+        double total = 0.0;
+        double minimum = MAX_SANITY;
+        for (BackroomSession session : sessions.values()) {
+            Sample sample = session.sanitySample;
+            if (sample == null || now - sample.nanos > STALE_NANOS) {
+                continue;
+            }
+            players++;
+            total += sample.sanity;
+            minimum = Math.min(minimum, sample.sanity);
+            grids.computeIfAbsent(sample.level, level -> new HashMap<>())
+                    .computeIfAbsent(FlickerEngine.cellKey(sample.x >> GRID_SHIFT, sample.z >> GRID_SHIFT),
+                            cell -> new ArrayList<>())
+                    .add(sample);
+            if (sample != session.sanityProcessed) {
+                fresh.add(sample);
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Sample sample : fresh) {
+            BackroomSession session = sample.session;
+            Sample previous = session.sanityProcessed;
+            session.sanityProcessed = sample;
+
+            // 前回のサンプルからの経過時間（リセットをまたいだら1周期分）
+            double seconds = INTERVAL_SECONDS;
+            if (previous != null && previous.epoch == sample.epoch) {
+                seconds = Math.min(MAX_STEP_SECONDS, (sample.nanos - previous.nanos) / 1e9);
+            }
+
+            int neighbors = countNeighbors(grids.get(sample.level), sample);
+            double isolation = neighbors == 0
+                    ? ALONE_FACTOR
+                    : 1.0 / (1.0 + COMPANION_RELIEF * Math.min(neighbors, 4));
+            double perSecond = BASE_DECAY * (1.0 + DEPTH_DECAY * sample.level) * isolation;
+            if (sample.dark) {
+                perSecond += DARK_DECAY;
+            }
+            double delta = -perSecond * difficultyScaling * seconds;
+
+            // 減った後の正気度で効果を決める
+            double projected = sample.sanity + delta;
+            int actions = 0;
+            if (projected < WHISPER_BELOW && random.nextDouble() < WHISPER_CHANCE) {
+                actions |= ACTION_WHISPER;
+            }
+            if (projected < DARKNESS_BELOW && random.nextDouble() < DARKNESS_CHANCE) {
+                actions |= ACTION_DARKNESS;
+            }
+            if (projected < NAUSEA_BELOW && random.nextDouble() < NAUSEA_CHANCE) {
+                actions |= ACTION_NAUSEA;
+            }
+            session.sanityResult.accumulateAndGet(new Result(delta, actions, sample.epoch), SanityEngine::merge);
+        }
+
+        lastPlayers = players;
+        lastAverage = players == 0 ? MAX_SANITY : total / players;
+        lastMinimum = minimum;
+        batchTime.recordSince(start);
+    }
+
+    private static Result merge(Result pending, Result next) {
+        return pending == null ? next : pending.plus(next);
+    }
+
+    // 同じレベルで NEIGHBOR_RANGE 以内にいる他のプレイヤーの数（周囲の格子だけを調べる）
+    private static int countNeighbors(Map<Long, List<Sample>> grid, Sample sample) {
+        int count = 0;
+        int range = NEIGHBOR_RANGE * NEIGHBOR_RANGE;
+        int fromX = (sample.x - NEIGHBOR_RANGE) >> GRID_SHIFT;
+        int toX = (sample.x + NEIGHBOR_RANGE) >> GRID_SHIFT;
+        int fromZ = (sample.z - NEIGHBOR_RANGE) >> GRID_SHIFT;
+        int toZ = (sample.z + NEIGHBOR_RANGE) >> GRID_SHIFT;
+        for (int cellX = fromX; cellX <= toX; cellX++) {
+            for (int cellZ = fromZ; cellZ <= toZ; cellZ++) {
+                List<Sample> cell = grid.get(FlickerEngine.cellKey(cellX, cellZ));
+                if (cell == null) {
+                    continue;
+                }
+                for (Sample other : cell) {
+                    if (other == sample) {
+                        continue;
+                    }
+                    int dx = other.x - sample.x;
+                    int dz = other.z - sample.z;
+                    if (dx * dx + dz * dz <= range) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
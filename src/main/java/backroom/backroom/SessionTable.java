@@ -0,0 +1,87 @@
+package backroom.backroom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// エンティティIDをキーにしたセッション表
+// プレイヤーのエンティティIDは接続中は変わらず、ほぼ連番なので、下位ビットでそのまま表の位置が決まる
+// 読み取りはロックなし・割り当てなし。参加と退出のときだけ表を作り直して公開する（書き込み時コピー）
+final class SessionTable {
+
+    private static final class Table {
+        final int[] keys;
+        final BackroomSession[] values;
+        final int mask;
+
+        Table(int capacity) {
+            this.keys = new int[capacity];
+            this.values = new BackroomSession[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table = new Table(64);
+    private int size;
+
+    BackroomSession get(int entityId) {
+        Table t = table;
+        int slot = entityId & t.mask;
+        while (true) {
+            BackroomSession session = t.values[slot];
+            if (session == null) {
+                return null;
+            }
+            if (t.keys[slot] == entityId) {
+                return session;
+            }
+            slot = (slot + 1) & t.mask;
+        }
+    }
+
+    synchronized void put(BackroomSession session) {
+        List<BackroomSession> sessions = values();
+        sessions.removeIf(existing -> existing.entityId == session.entityId);
+        sessions.add(session);
+        rebuild(sessions);
+    }
+
+    synchronized BackroomSession remove(int entityId) {
+        BackroomSession removed = get(entityId);
+        if (removed != null) {
+            List<BackroomSession> sessions = values();
+            sessions.remove(removed);
+            rebuild(sessions);
+        }
+        return removed;
+    }
+
+    synchronized List<BackroomSession> values() {
+        Table t = table;
+        List<BackroomSession> sessions = new ArrayList<>(size);
+        for (BackroomSession session : t.values) {
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    // 負荷率を 1/2 以下に保って作り直す
+    private void rebuild(List<BackroomSession> sessions) {
+        int capacity = 64;
+        while (capacity < sessions.size() * 2) {
+            capacity <<= 1;
+        }
+        Table next = new Table(capacity);
+        for (BackroomSession session : sessions) {
+            int slot = session.entityId & next.mask;
+            while (next.values[slot] != null) {
+                slot = (slot + 1) & next.mask;
+            }
+            next.keys[slot] = session.entityId;
+            next.values[slot] = session;
+        }
+        size = sessions.size();
+        table = next;
+    }
+}
@@ -0,0 +1,430 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// プレイヤーを迷路の中で追いかける徘徊者（スマイラーとハウンド）
+// 経路探索は非同期スレッドで WalkGrid の上の流れ場（FlowField）を作り、同じ目標を追う徘徊者で共有する
+// エンティティのティックでは共有の流れ場から次の列を引いて少し進めるだけ（AI は切り、ブロックも読まない）
+// プレイヤーの位置は効果ホイールから1秒ごとに置かれたものを読む（Folia では別のリージョンのプレイヤーに触れない）
+final class StalkerEngine {
+
+    // 徘徊者の種類
+    static final class Kind {
+        final EntityType type;
+        final double speed; // 1ティックに進むブロック数
+        final double damage;
+        final PotionEffect effect; // 攻撃時に与える効果（無ければ null）
+        final Sound sound;
+
+        Kind(EntityType type, double speed, double damage, PotionEffect effect, Sound sound) {
+            this.type = type;
+            this.speed = speed;
+            this.damage = damage;
+            this.effect = effect;
+            this.sound = sound;
+        }
+    }
+
+    // 暗闇で笑う顔（遅いが、捕まると視界を奪う）と、速く噛みつくハウンド
+    // バックルームは PEACEFUL なので、敵対モブ（すぐに消される）ではない種類を使う
+    static final Kind SMILER = new Kind(EntityType.SNOW_GOLEM, 0.12, 2.0,
+            new PotionEffect(PotionEffectType.DARKNESS, 100, 0, false, false), Sound.ENTITY_ENDERMAN_STARE);
+    static final Kind HOUND = new Kind(EntityType.WOLF, 0.22, 4.0, null, Sound.ENTITY_WOLF_GROWL);
+
+    private static final double HOUND_CHANCE = 0.5; // レベル1以降で出現する徘徊者がハウンドである確率（レベル0はスマイラーのみ）
+    private static final double SPAWN_CHANCE = 0.1; // プレイヤーごとに1秒ごとに出現させる確率（上限まで）
+    private static final int SPAWN_MIN = 24; // プレイヤーから出現させる距離
+    private static final int SPAWN_MAX = 40;
+    private static final int SPAWN_ATTEMPTS = 8;
+    private static final int CHASE_RANGE = 40; // 追いかける距離（流れ場の範囲より内側）
+    private static final double LIVE_RANGE = 8.0; // これより近ければプレイヤーの現在の位置を直接読む
+    private static final double ATTACK_RANGE = 1.5;
+    private static final long ATTACK_COOLDOWN_TICKS = 30;
+    private static final int RETARGET_TICKS = 20;
+    private static final int IDLE_DESPAWN_TICKS = 20 * 60; // 追う相手がいないまま1分で消える
+    private static final int STUCK_REBUILD_TICKS = 20 * 2; // 追う相手がいるのに進めないまま2秒で流れ場を作り直す
+    private static final int STUCK_DESPAWN_TICKS = 20 * 10; // 作り直しても進めないまま10秒で消える
+    private static final long TARGET_STALE_NANOS = TimeUnit.SECONDS.toNanos(3); // 古い位置は追わない
+    private static final long FIELD_TTL_NANOS = TimeUnit.SECONDS.toNanos(10); // 使われない流れ場を捨てるまでの時間
+    private static final int TARGET_CELL_SHIFT = 2; // 4x4 ブロックの目標を同じ流れ場で追う
+
+    // プレイヤーの最新の位置（所有するスレッドで作り、作成後は変更しない）
+    private static final class Target {
+        final UUID playerId;
+        final int x;
+        final int z;
+        final long nanos;
+
+        Target(UUID playerId, int x, int z, long nanos) {
+            this.playerId = playerId;
+            this.x = x;
+            this.z = z;
+            this.nanos = nanos;
+        }
+    }
+
+    // レベルごとの共有状態（どのスレッドからも読まれる）
+    private static final class LevelState {
+        final BackroomLevel level;
+        final Map<UUID, Target> targets = new ConcurrentHashMap<>();
+        final Map<Long, FlowField> fields = new ConcurrentHashMap<>(); // 目標のセル -> 流れ場
+        final Set<Long> building = ConcurrentHashMap.newKeySet(); // 作成中の流れ場
+        final AtomicInteger count = new AtomicInteger();
+
+        LevelState(BackroomLevel level) {
+            this.level = level;
+        }
+    }
+
+    // 1体の徘徊者（エンティティを所有するスレッドだけが触る）
+    private static final class Stalker {
+        final Kind kind;
+        final LevelState state;
+        final LivingEntity entity;
+        final double y;
+        double x;
+        double z;
+        Target target;
+        FlowField field; // 最後に使った流れ場（新しいものが作られるまで使い続ける）
+        int ticks;
+        int idleTicks;
+        int stuckTicks; // 追う相手がいるのに進めなかったティック数
+        long lastAttack = -ATTACK_COOLDOWN_TICKS;
+
+        Stalker(Kind kind, LevelState state, LivingEntity entity, double x, double y, double z) {
+            this.kind = kind;
+            this.state = state;
+            this.entity = entity;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private final Plugin plugin;
+    private final LevelState[] levels;
+    private final EffectQueue effects;
+    private final Function<Player, BackroomSession> sessionResolver;
+    private final int maxPerLevel;
+    private final Metrics metrics;
+    private final Metrics.Histogram fieldTime;
+    private final Metrics.Histogram steerTime;
+    private final Metrics.Counter fieldsBuilt;
+    private final Set<Stalker> stalkers = ConcurrentHashMap.newKeySet();
+
+    StalkerEngine(Plugin plugin, BackroomLevel[] levels, EffectQueue effects,
+                  Function<Player, BackroomSession> sessionResolver, int maxPerLevel, Metrics metrics) {
+        this.plugin = plugin;
+        this.levels = new LevelState[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            this.levels[i] = new LevelState(levels[i]);
+        }
+        this.effects = effects;
+        this.sessionResolver = sessionResolver;
+        this.maxPerLevel = maxPerLevel;
+        this.metrics = metrics;
+        this.fieldTime = metrics.histogram("stalker.field");
+        this.steerTime = metrics.histogram("stalker.steer");
+        this.fieldsBuilt = metrics.counter("stalker.fields");
+    }
+
+    // 効果ホイールから1秒ごとに呼ばれる（プレイヤーを所有するスレッド）
+    // 追われる位置を置き、上限に達していなければ近くに徘徊者を出す
+    void track(Player player, BackroomLevel level) {
+        LevelState state = levels[level.level];
+        GameMode mode = player.getGameMode();
+        if (mode == GameMode.CREATIVE || mode == GameMode.SPECTATOR) {
+            state.targets.remove(player.getUniqueId());
+            return;
+        }
+        Location loc = player.getLocation();
+        int x = loc.getBlockX();
+        int z = loc.getBlockZ();
+        state.targets.put(player.getUniqueId(), new Target(player.getUniqueId(), x, z, System.nanoTime()));
+
+        if (state.count.get() < maxPerLevel && ThreadLocalRandom.current().nextDouble() < SPAWN_CHANCE) {
+            spawnNear(state, level.world, x, z);
+        }
+    }
+
+    // プレイヤーが退出したときやバックルームを出たときに追われる位置を消す
+    void forget(UUID playerId) {
+        for (LevelState state : levels) {
+            state.targets.remove(playerId);
+        }
+    }
+
+    // ワールドのアンロード時（徘徊者のタスクはエンティティと一緒に破棄される）
+    void forgetLevel(BackroomLevel level) {
+        LevelState state = levels[level.level];
+        state.targets.clear();
+        state.fields.clear();
+    }
+
+    // プラグインの無効化時に残っている徘徊者を消す（保存しないエンティティなので、停止時は何もしなくても消える）
+    void removeAll() {
+        if (RegionSupport.FOLIA) {
+            return;
+        }
+        for (Stalker stalker : stalkers) {
+            stalker.entity.remove();
+        }
+        stalkers.clear();
+    }
+
+    List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (LevelState state : levels) {
+            lines.add(String.format("徘徊者 レベル%d: %d / %d 体、流れ場 %d（作成中 %d）、追跡中のプレイヤー %d人",
+                    state.level.level, state.count.get(), maxPerLevel, state.fields.size(), state.building.size(),
+                    state.targets.size()));
+        }
+        return lines;
+    }
+
+    // プレイヤーから離れた歩ける列に出す（読み込まれていて、このスレッドが所有する場所だけ）
+    private void spawnNear(LevelState state, World world, int playerX, int playerZ) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LayoutOracle oracle = state.level.oracle;
+        for (int attempt = 0; attempt < SPAWN_ATTEMPTS; attempt++) {
+            double angle = random.nextDouble() * Math.PI * 2;
+            int distance = SPAWN_MIN + random.nextInt(SPAWN_MAX - SPAWN_MIN + 1);
+            int x = playerX + (int) Math.round(Math.cos(angle) * distance);
+            int z = playerZ + (int) Math.round(Math.sin(angle) * distance);
+            if (!world.isChunkLoaded(x >> 4, z >> 4) || !oracle.isStandable(x, z)) {
+                continue;
+            }
+            double y = state.level.config.baseY + 1;
+            Location loc = new Location(world, x + 0.5, y, z + 0.5);
+            if (!Bukkit.isOwnedByCurrentRegion(loc)) {
+                continue;
+            }
+            if (state.count.incrementAndGet() > maxPerLevel) {
+                state.count.decrementAndGet();
+                return;
+            }
+            Kind kind = state.level.level > 0 && random.nextDouble() < HOUND_CHANCE ? HOUND : SMILER;
+            Entity spawned = world.spawnEntity(loc, kind.type);
+            if (!(spawned instanceof LivingEntity)) {
+                spawned.remove();
+                state.count.decrementAndGet();
+                return;
+            }
+            LivingEntity entity = (LivingEntity) spawned;
+            entity.setAI(false); // 動きはすべてこちらで決める
+            entity.setPersistent(false); // チャンクと一緒に保存しない
+            entity.setSilent(true);
+
+            Stalker stalker = new Stalker(kind, state, entity, loc.getX(), y, loc.getZ());
+            stalkers.add(stalker);
+            entity.getScheduler().runAtFixedRate(plugin, task -> {
+                if (!steer(stalker)) {
+                    task.cancel();
+                    entity.remove();
+                    retire(stalker);
+                }
+            }, () -> retire(stalker), 1, 1);
+            return;
+        }
+    }
+
+    private void retire(Stalker stalker) {
+        if (stalkers.remove(stalker)) {
+            stalker.state.count.decrementAndGet();
+        }
+    }
+
+    // 1ティック分の動き（エンティティを所有するスレッド）。消すべきなら false
+    private boolean steer(Stalker stalker) {
+        long start = metrics.start();
+        stalker.ticks++;
+        if (stalker.ticks % RETARGET_TICKS == 1 || stalker.target == null) {
+            stalker.target = nearestTarget(stalker);
+        }
+        Target target = stalker.target;
+        if (target == null) {
+            steerTime.recordSince(start);
+            return ++stalker.idleTicks < IDLE_DESPAWN_TICKS;
+        }
+        stalker.idleTicks = 0;
+
+        // 近ければプレイヤーの今の位置を読む（同じスレッドが所有しているときだけ）
+        double targetX = target.x + 0.5;
+        double targetZ = target.z + 0.5;
+        Player player = null;
+        double dx = targetX - stalker.x;
+        double dz = targetZ - stalker.z;
+        if (dx * dx + dz * dz < LIVE_RANGE * LIVE_RANGE) {
+            player = Bukkit.getPlayer(target.playerId);
+            if (player != null && Bukkit.isOwnedByCurrentRegion(player)
+                    && player.getWorld() == stalker.entity.getWorld()) {
+                Location loc = player.getLocation();
+                targetX = loc.getX();
+                targetZ = loc.getZ();
+                dx = targetX - stalker.x;
+                dz = targetZ - stalker.z;
+            } else {
+                player = null;
+            }
+        }
+
+        // 攻撃
+        double distanceSquared = dx * dx + dz * dz;
+        if (player != null && distanceSquared < ATTACK_RANGE * ATTACK_RANGE) {
+            if (stalker.ticks - stalker.lastAttack >= ATTACK_COOLDOWN_TICKS) {
+                stalker.lastAttack = stalker.ticks;
+                attack(stalker, player);
+            }
+            steerTime.recordSince(start);
+            return true;
+        }
+
+        // 流れ場から次の列を引き、その中央へ向かう
+        // 直接向かうのは目標の列の隣まで来てから（それより遠くで直線に進むと壁を抜ける）
+        FlowField field = field(stalker.state, target);
+        if (field != null) {
+            stalker.field = field;
+        }
+        field = stalker.field;
+        if (field == null) {
+            steerTime.recordSince(start); // 最初の流れ場ができるまで待つ
+            return stuck(stalker, target);
+        }
+        int cellX = (int) Math.floor(stalker.x);
+        int cellZ = (int) Math.floor(stalker.z);
+        double aimX = targetX;
+        double aimZ = targetZ;
+        if (player == null || field.distanceAt(cellX, cellZ) > 1) {
+            int step = field.nextStep(cellX, cellZ);
+            if (step == 0) {
+                steerTime.recordSince(start);
+                return stuck(stalker, target);
+            }
+            aimX = cellX + FlowField.stepX(step) + 0.5;
+            aimZ = cellZ + FlowField.stepZ(step) + 0.5;
+        }
+
+        double ax = aimX - stalker.x;
+        double az = aimZ - stalker.z;
+        double length = Math.sqrt(ax * ax + az * az);
+        if (length > 1e-6) {
+            double move = Math.min(stalker.kind.speed, length);
+            stalker.x += ax / length * move;
+            stalker.z += az / length * move;
+            float yaw = (float) Math.toDegrees(Math.atan2(-ax, az));
+            Location loc = new Location(stalker.entity.getWorld(), stalker.x, stalker.y, stalker.z, yaw, 0f);
+            if (RegionSupport.FOLIA) {
+                stalker.entity.teleportAsync(loc); // Folia では同期の teleport が使えない
+            } else {
+                stalker.entity.teleport(loc); // 所有するスレッドなのでその場で動かす（毎ティックの Future を作らない）
+            }
+        }
+        stalker.stuckTicks = 0;
+        steerTime.recordSince(start);
+        return true;
+    }
+
+    // 追う相手がいるのに進めないティック（流れ場の外や、目標の列に着いたのにプレイヤーがいない）
+    // しばらく続けば流れ場を捨てて作り直させ、それでも進めなければ消す
+    private boolean stuck(Stalker stalker, Target target) {
+        stalker.stuckTicks++;
+        if (stalker.stuckTicks == STUCK_REBUILD_TICKS && stalker.field != null) {
+            long key = FlickerEngine.cellKey(target.x >> TARGET_CELL_SHIFT, target.z >> TARGET_CELL_SHIFT);
+            stalker.state.fields.remove(key, stalker.field);
+            stalker.field = null;
+        }
+        return stalker.stuckTicks < STUCK_DESPAWN_TICKS;
+    }
+
+    private void attack(Stalker stalker, Player player) {
+        // PEACEFUL ではモブからのダメージは0になるので、発生源を付けずに与える
+        player.damage(stalker.kind.damage);
+        BackroomSession session = sessionResolver.apply(player);
+        if (session == null) {
+            return;
+        }
+        if (stalker.kind.effect != null) {
+            effects.potion(session, stalker.kind.effect);
+        }
+        effects.sound(session, stalker.kind.sound, 1.0f, 0.6f);
+    }
+
+    // 追いかける距離にいる最も近いプレイヤー（古い位置は使わない）
+    private Target nearestTarget(Stalker stalker) {
+        long now = System.nanoTime();
+        Target best = null;
+        double bestDistance = (double) CHASE_RANGE * CHASE_RANGE;
+        for (Target target : stalker.state.targets.values()) {
+            if (now - target.nanos > TARGET_STALE_NANOS) {
+                continue;
+            }
+            double dx = target.x - stalker.x;
+            double dz = target.z - stalker.z;
+            double distance = dx * dx + dz * dz;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = target;
+            }
+        }
+        return best;
+    }
+
+    // 目標のセルの流れ場（無ければ非同期スレッドで作り始めて null を返す）
+    private FlowField field(LevelState state, Target target) {
+        long key = FlickerEngine.cellKey(target.x >> TARGET_CELL_SHIFT, target.z >> TARGET_CELL_SHIFT);
+        FlowField field = state.fields.get(key);
+        if (field != null) {
+            return field;
+        }
+        if (state.building.add(key)) {
+            int targetX = target.x;
+            int targetZ = target.z;
+            Bukkit.getAsyncScheduler().runNow(plugin, task -> {
+                try {
+                    long start = metrics.start();
+                    FlowField built = FlowField.build(state.level.walkGrid, targetX, targetZ);
+                    fieldTime.recordSince(start);
+                    fieldsBuilt.increment();
+                    evictOld(state, built.createdAt);
+                    state.fields.put(key, built);
+                } finally {
+                    state.building.remove(key);
+                }
+            });
+        }
+        return null;
+    }
+
+    // 作成から時間の経った流れ場を捨てる（目標が動けば別のセルの流れ場が使われる）
+    private static void evictOld(LevelState state, long now) {
+        Iterator<FlowField> fields = state.fields.values().iterator();
+        while (fields.hasNext()) {
+            if (now - fields.next().createdAt > FIELD_TTL_NANOS) {
+                fields.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package backroom.backroom;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+// レベル間・ワールド間の移動の手順
+// 予約（移動中の二重発火を防ぐ）→ 目的地チャンクの非同期読み込み → 非同期テレポート → 到着後にプレイヤーのスレッドで効果とメッセージ
+// どの段階でもメインスレッド（Folia ではリージョンのスレッド）でチャンクを同期読み込みしない
+final class TransferPipeline {
+
+    // 完了の通知が来ない移動（途中でエンティティが消えた場合など）の予約を諦めるまでの時間
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+
+    private final Plugin plugin;
+    private final Metrics metrics;
+    private final Metrics.Histogram transferTime; // 予約から到着までの時間
+
+    TransferPipeline(Plugin plugin, Metrics metrics) {
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.transferTime = metrics.histogram("transfer");
+    }
+
+    // 移動を開始する。既に移動中なら何もせず false（出口の上に立っている間の移動イベントなど）
+    boolean transfer(Player player, BackroomSession session, Location destination, Consumer<Player> onArrival) {
+        if (!reserve(session)) {
+            return false;
+        }
+        long start = metrics.start();
+
+        destination.getWorld()
+                .getChunkAtAsync(destination.getBlockX() >> 4, destination.getBlockZ() >> 4, true)
+                .whenComplete((chunk, error) -> {
+                    if (error != null) {
+                        plugin.getLogger().log(Level.WARNING, "移動先のチャンクを読み込めません: " + destination, error);
+                        session.transferStartedAt = 0L;
+                        return;
+                    }
+                    RegionSupport.runFor(plugin, player, () -> teleport(player, session, destination, onArrival, start));
+                });
+        return true;
+    }
+
+    boolean isTransferring(BackroomSession session) {
+        long started = session.transferStartedAt;
+        return started != 0L && System.nanoTime() - started < TIMEOUT_NANOS;
+    }
+
+    // プレイヤーのスレッドからのみ呼ばれるので、確認と設定の間に他の予約は入らない
+    private boolean reserve(BackroomSession session) {
+        if (isTransferring(session)) {
+            return false;
+        }
+        long now = System.nanoTime();
+        session.transferStartedAt = now == 0L ? 1L : now;
+        return true;
+    }
+
+    private void teleport(Player player, BackroomSession session, Location destination, Consumer<Player> onArrival,
+                          long start) {
+        player.teleportAsync(destination).whenComplete((success, error) -> RegionSupport.runFor(plugin, player, () -> {
+            session.transferStartedAt = 0L;
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, player.getName() + " をテレポートできません", error);
+                return;
+            }
+            if (!success) {
+                return;
+            }
+            transferTime.recordSince(start);
+            if (onArrival != null) {
+                onArrival.accept(player);
+            }
+        }));
+    }
+}
@@ -0,0 +1,61 @@
+package backroom.backroom;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 歩ける列のビット表（1レベルにつき1つ）
+// LayoutOracle の isStandable をチャンク単位で 256 ビットに詰めて覚えておく。ブロックは読まない
+// 配置は種から決まるので、捨てても同じ値を作り直せる（上限を超えたらまとめて捨てる）
+final class WalkGrid {
+
+    private static final int MAX_CHUNKS = 4096; // 覚えておくチャンク数の上限（1チャンク 32 バイト）
+
+    private final LayoutOracle oracle;
+    private final Map<Long, long[]> chunks = new ConcurrentHashMap<>();
+
+    WalkGrid(LayoutOracle oracle) {
+        this.oracle = oracle;
+    }
+
+    // 正方形の範囲を z * size + x の順の配列に写す（チャンクごとに表を1回だけ引く）
+    void copy(int originX, int originZ, int size, boolean[] out) {
+        for (int chunkZ = originZ >> 4; chunkZ <= (originZ + size - 1) >> 4; chunkZ++) {
+            for (int chunkX = originX >> 4; chunkX <= (originX + size - 1) >> 4; chunkX++) {
+                long[] mask = chunk(chunkX, chunkZ);
+                int fromX = Math.max(originX, chunkX << 4);
+                int toX = Math.min(originX + size, (chunkX << 4) + 16);
+                int fromZ = Math.max(originZ, chunkZ << 4);
+                int toZ = Math.min(originZ + size, (chunkZ << 4) + 16);
+                for (int z = fromZ; z < toZ; z++) {
+                    int row = (z - originZ) * size - originX;
+                    for (int x = fromX; x < toX; x++) {
+                        int bit = ((z & 15) << 4) | (x & 15);
+                        out[row + x] = (mask[bit >> 6] & (1L << bit)) != 0;
+                    }
+                }
+            }
+        }
+    }
+
+    private long[] chunk(int chunkX, int chunkZ) {
+        long key = FlickerEngine.cellKey(chunkX, chunkZ);
+        long[] mask = chunks.get(key);
+        if (mask != null) {
+            return mask;
+        }
+        // 同時に同じチャンクを求めても結果は同じなので、ロックせずに上書きしてよい
+        mask = new long[4];
+        int baseX = chunkX << 4;
+        int baseZ = chunkZ << 4;
+        for (int bit = 0; bit < 256; bit++) {
+            if (oracle.isStandable(baseX + (bit & 15), baseZ + (bit >> 4))) {
+                mask[bit >> 6] |= 1L << bit;
+            }
+        }
+        if (chunks.size() >= MAX_CHUNKS) {
+            chunks.clear();
+        }
+        chunks.put(key, mask);
+        return mask;
+    }
+}
@@ -0,0 +1,79 @@
+package backroom.backroom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 生成器の出力がチャンクを生成する順序やスレッドに依存しないこと
+// 順番・逆順・複数スレッドで同じ範囲を生成し、チャンクごとのハッシュを比べる（生成器は毎回作り直して骨組みのキャッシュも空から始める）
+class GeneratorOrderTest {
+
+    private static final int RADIUS = 8; // 正と負の座標にまたがる 16×16 チャンク
+    private static final int SIDE = RADIUS * 2;
+    private static final int THREADS = 4;
+
+    @Test
+    void sequentialReverseAndParallelAgree() throws Exception {
+        for (int level = 0; level < Stubs.levelCount(); level++) {
+            LevelConfig config = Stubs.levelConfig(level);
+
+            long[] sequential = new long[SIDE * SIDE];
+            BackroomGenerator generator = generator(config);
+            for (int i = 0; i < sequential.length; i++) {
+                sequential[i] = generate(generator, i);
+            }
+
+            long[] reverse = new long[SIDE * SIDE];
+            generator = generator(config);
+            for (int i = reverse.length - 1; i >= 0; i--) {
+                reverse[i] = generate(generator, i);
+            }
+
+            // 複数のスレッドで1つの生成器を共有する（Paper の並行生成と同じ）
+            long[] parallel = new long[SIDE * SIDE];
+            BackroomGenerator shared = generator(config);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < THREADS; thread++) {
+                    int first = thread;
+                    futures.add(executor.submit(() -> {
+                        for (int i = first; i < parallel.length; i += THREADS) {
+                            parallel[i] = generate(shared, i);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            // どのチャンクも同じ内容なら順序の違いを検出できない
+            assertTrue(Arrays.stream(sequential).distinct().count() > 1,
+                    "レベル" + level + ": すべてのチャンクが同じ内容です");
+            assertArrayEquals(sequential, reverse, "レベル" + level + ": 逆順の生成結果が一致しません");
+            assertArrayEquals(sequential, parallel, "レベル" + level + ": 並行の生成結果が一致しません");
+        }
+    }
+
+    private static BackroomGenerator generator(LevelConfig config) {
+        return new BackroomGenerator(new LayoutOracle(config), new LightIndex(), Metrics.DISABLED);
+    }
+
+    private static long generate(BackroomGenerator generator, int i) {
+        MemoryChunkData chunkData = new MemoryChunkData(-64, 320);
+        generator.generateNoise(null, new Random(0), i % SIDE - RADIUS, i / SIDE - RADIUS, chunkData);
+        return chunkData.hash();
+    }
+}
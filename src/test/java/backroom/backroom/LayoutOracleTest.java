@@ -0,0 +1,65 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// チャンクを読まない問い合わせ（LayoutOracle）の答えが、生成されたブロックと列ごとに一致すること
+// 生成器と問い合わせには別々の LayoutOracle を使う（キャッシュを共有しない）
+class LayoutOracleTest {
+
+    private static final int RADIUS = 12; // 正と負の座標にまたがる 24×24 チャンク
+
+    @Test
+    void oracleAgreesWithGeneratedChunks() {
+        for (int level = 0; level < Stubs.levelCount(); level++) {
+            LevelConfig config = Stubs.levelConfig(level);
+            BackroomGenerator generator = new BackroomGenerator(new LayoutOracle(config), new LightIndex(), Metrics.DISABLED);
+            LayoutOracle oracle = new LayoutOracle(config);
+            int wallY = config.baseY + config.wallHeight; // 壁の最上段（床の上の装飾は届かない）
+            int ceilingY = config.ceilingY();
+            MemoryChunkData chunkData = new MemoryChunkData(-64, 320);
+            int walls = 0;
+            int lights = 0;
+            int exits = 0;
+            int stairs = 0;
+
+            for (int chunkX = -RADIUS; chunkX < RADIUS; chunkX++) {
+                for (int chunkZ = -RADIUS; chunkZ < RADIUS; chunkZ++) {
+                    chunkData.clear();
+                    generator.generateNoise(null, new Random(0), chunkX, chunkZ, chunkData);
+                    for (int x = 0; x < 16; x++) {
+                        for (int z = 0; z < 16; z++) {
+                            int absX = chunkX * 16 + x;
+                            int absZ = chunkZ * 16 + z;
+                            String where = "レベル" + level + " (" + absX + ", " + absZ + ")";
+                            Material floor = chunkData.getType(x, config.baseY, z);
+                            boolean wall = chunkData.getType(x, wallY, z) == config.wallMaterial;
+                            boolean light = chunkData.getType(x, ceilingY, z) == config.lightMaterial;
+                            boolean exit = floor == Material.EMERALD_BLOCK;
+                            boolean stair = floor == Material.MOSSY_COBBLESTONE;
+                            assertEquals(wall, oracle.isWall(absX, absZ), where + ": isWall");
+                            assertEquals(light, oracle.isLight(absX, absZ), where + ": isLight");
+                            assertEquals(exit, oracle.isExit(absX, absZ), where + ": isExit");
+                            assertEquals(stair, oracle.isStair(absX, absZ), where + ": isStair");
+                            walls += wall ? 1 : 0;
+                            lights += light ? 1 : 0;
+                            exits += exit ? 1 : 0;
+                            stairs += stair ? 1 : 0;
+                        }
+                    }
+                }
+            }
+
+            // 一致していても、比べた範囲に該当する列が無ければ何も確かめていない
+            assertTrue(walls > 0, "レベル" + level + ": 壁がありません");
+            assertTrue(lights > 0, "レベル" + level + ": 照明がありません");
+            assertTrue(exits > 0, "レベル" + level + ": 出口がありません");
+            assertEquals(config.stairChance > 0.0, stairs > 0, "レベル" + level + ": 階段の有無が設定と合いません");
+        }
+    }
+}
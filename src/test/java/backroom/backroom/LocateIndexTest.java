@@ -0,0 +1,74 @@
+package backroom.backroom;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 索引（LocateIndex）の最も近い出口・階段が、周りの列をすべて調べた結果と同じ距離になること
+// 索引と総当たりには別々の LayoutOracle を使う（キャッシュを共有しない）
+class LocateIndexTest {
+
+    private static final int ORIGINS = 12; // レベルごとに調べる位置の数
+    private static final int SPREAD = 20000; // 位置を選ぶ範囲（正と負の座標にまたがる）
+
+    @Test
+    void nearestMatchesBruteForce() {
+        Random random = new Random(25);
+        for (int level = 0; level < Stubs.levelCount(); level++) {
+            LevelConfig config = Stubs.levelConfig(level);
+            LocateIndex index = new LocateIndex(new LayoutOracle(config));
+            LayoutOracle oracle = new LayoutOracle(config);
+            for (int i = 0; i < ORIGINS; i++) {
+                int x = random.nextInt(SPREAD * 2) - SPREAD;
+                int z = random.nextInt(SPREAD * 2) - SPREAD;
+                // 半分はワールド境界を位置のすぐ近くに置く（境界の外の列は返さない）
+                int min = Integer.MIN_VALUE / 2;
+                int max = Integer.MAX_VALUE / 2;
+                if (i % 2 == 1) {
+                    min = Math.min(x, z) - random.nextInt(64);
+                    max = Math.max(x, z) + random.nextInt(64);
+                }
+                check(index, oracle, LocateIndex.EXIT, x, z, min, max, "レベル" + level + " 出口");
+                if (config.stairChance > 0.0) {
+                    check(index, oracle, LocateIndex.STAIR, x, z, min, max, "レベル" + level + " 階段");
+                } else {
+                    assertNull(index.nearest(LocateIndex.STAIR, x, z, min, max), "レベル" + level + ": 階段の無いレベルで階段が見つかりました");
+                }
+            }
+        }
+    }
+
+    private static void check(LocateIndex index, LayoutOracle oracle, int kind, int x, int z, int min, int max, String what) {
+        String where = what + " (" + x + ", " + z + ") 境界 [" + min + ", " + max + "]";
+        int[] found = index.nearest(kind, x, z, min, max);
+        assertNotNull(found, where + ": 見つかりません");
+        assertTrue(matches(oracle, kind, found[0], found[1]), where + ": (" + found[0] + ", " + found[1] + ") は該当する列ではありません");
+        assertTrue(found[0] >= min && found[0] <= max && found[1] >= min && found[1] <= max, where + ": 境界の外の列です");
+
+        // 見つかった距離を半径とする正方形の中に、より近い列が無いこと（同じ距離の列はどれでもよい）
+        long found2 = distance2(x, z, found[0], found[1]);
+        long best = Long.MAX_VALUE;
+        int radius = (int) Math.ceil(Math.sqrt(found2));
+        for (int px = Math.max(min, x - radius); px <= Math.min(max, x + radius); px++) {
+            for (int pz = Math.max(min, z - radius); pz <= Math.min(max, z + radius); pz++) {
+                if (matches(oracle, kind, px, pz)) {
+                    best = Math.min(best, distance2(x, z, px, pz));
+                }
+            }
+        }
+        assertEquals(best, found2, where + ": もっと近い列があります");
+    }
+
+    private static boolean matches(LayoutOracle oracle, int kind, int x, int z) {
+        return kind == LocateIndex.EXIT ? oracle.isExit(x, z) : oracle.isStair(x, z);
+    }
+
+    private static long distance2(int x, int z, int px, int pz) {
+        return (long) (px - x) * (px - x) + (long) (pz - z) * (pz - z);
+    }
+}
@@ -0,0 +1,122 @@
+package backroom.backroom;
+
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.material.MaterialData;
+
+import java.util.Arrays;
+
+// テストとベンチマーク用のメモリ上の ChunkData（サーバーなしで生成器を動かす）
+// 素材の配列に書くだけなので、計測される割り当ては生成器自身のものだけになる
+final class MemoryChunkData implements ChunkGenerator.ChunkData {
+
+    private final int minHeight;
+    private final int maxHeight;
+    private final Material[] blocks;
+
+    MemoryChunkData(int minHeight, int maxHeight) {
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.blocks = new Material[16 * 16 * (maxHeight - minHeight)];
+        clear();
+    }
+
+    // 新しいチャンクと同じ空気だけの状態に戻す（生成器は空気を書かないので、使い回すときに必要）
+    void clear() {
+        Arrays.fill(blocks, Material.AIR);
+    }
+
+    // 全ブロックの素材から求めたハッシュ（同じ JVM の中で2つのチャンクの中身を比べる）
+    long hash() {
+        long hash = 1;
+        for (Material material : blocks) {
+            hash = hash * 31 + material.ordinal();
+        }
+        return hash;
+    }
+
+    private int index(int x, int y, int z) {
+        return (((y - minHeight) << 8) | (z << 4) | x);
+    }
+
+    @Override
+    public int getMinHeight() {
+        return minHeight;
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    // バイオームの定数はレジストリ（サーバー）が無いと初期化できない。生成器は読まない
+    @Override
+    public Biome getBiome(int x, int y, int z) {
+        return null;
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, Material material) {
+        if (y >= minHeight && y < maxHeight) {
+            blocks[index(x, y, z)] = material;
+        }
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, MaterialData material) {
+        setBlock(x, y, z, material.getItemType());
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, BlockData blockData) {
+        setBlock(x, y, z, blockData.getMaterial());
+    }
+
+    // 上限は排他的（Paper と同じ）
+    @Override
+    public void setRegion(int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, Material material) {
+        for (int y = Math.max(yMin, minHeight); y < Math.min(yMax, maxHeight); y++) {
+            for (int z = Math.max(zMin, 0); z < Math.min(zMax, 16); z++) {
+                for (int x = Math.max(xMin, 0); x < Math.min(xMax, 16); x++) {
+                    blocks[index(x, y, z)] = material;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setRegion(int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, MaterialData material) {
+        setRegion(xMin, yMin, zMin, xMax, yMax, zMax, material.getItemType());
+    }
+
+    @Override
+    public void setRegion(int xMin, int yMin, int zMin, int xMax, int yMax, int zMax, BlockData blockData) {
+        setRegion(xMin, yMin, zMin, xMax, yMax, zMax, blockData.getMaterial());
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        if (y < minHeight || y >= maxHeight) {
+            return Material.AIR;
+        }
+        return blocks[index(x, y, z)];
+    }
+
+    @Override
+    public MaterialData getTypeAndData(int x, int y, int z) {
+        return new MaterialData(getType(x, y, z));
+    }
+
+    @Override
+    public BlockData getBlockData(int x, int y, int z) {
+        throw new UnsupportedOperationException("BlockData はサーバーなしでは作れない");
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public byte getData(int x, int y, int z) {
+        return 0;
+    }
+}
@@ -0,0 +1,76 @@
+package backroom.backroom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 粗い格子の補間ノイズが、補間前（SimplexOctaveGenerator を列ごとに直接評価）の出力と許容差の中で一致すること
+class NoiseFieldTest {
+
+    private static final int RADIUS = 12; // 正と負の座標にまたがる 24×24 チャンク
+    // 上限は実測（誤差の最大 0.0055、壁の判定が変わった列 5 / 147456）に余裕を持たせた値
+    private static final double VALUE_TOLERANCE = 0.01; // 補間値と直接の値の差の上限（ノイズの値域は -1〜1）
+    private static final double WALL_TOLERANCE = 0.0005; // 壁の判定が変わった列の割合の上限（閾値の境目の列だけ）
+
+    @Test
+    void interpolatedNoiseStaysCloseToExactNoise() {
+        int tested = 0;
+        for (int level = 0; level < Stubs.levelCount(); level++) {
+            LevelConfig config = Stubs.levelConfig(level);
+            if (!config.usesNoise) {
+                continue;
+            }
+            tested++;
+            NoiseField field = new LayoutOracle(config).noiseField;
+            double[] plane = new double[256];
+            double maxError = 0.0;
+            for (int chunkX = -RADIUS; chunkX < RADIUS; chunkX++) {
+                for (int chunkZ = -RADIUS; chunkZ < RADIUS; chunkZ++) {
+                    field.fillChunk(chunkX * 16, chunkZ * 16, plane, 0);
+                    for (int i = 0; i < 16; i++) {
+                        for (int j = 0; j < 16; j++) {
+                            int a = chunkX * 16 + i;
+                            int b = chunkZ * 16 + j;
+                            double value = plane[(i << 4) | j];
+                            maxError = Math.max(maxError, Math.abs(value - field.exact(a, b)));
+                            // 1点ずつの補間（LayoutOracle が使う）はチャンクの補間とビット単位で一致する
+                            assertEquals(value, field.interpolated(a, b),
+                                    "レベル" + level + ": 1点ずつの補間がチャンクの補間と異なります (" + a + ", " + b + ")");
+                        }
+                    }
+                }
+            }
+            assertTrue(maxError <= VALUE_TOLERANCE,
+                    "レベル" + level + ": 補間の誤差が大きすぎます (" + maxError + ")");
+        }
+        assertTrue(tested > 0, "ノイズを使うレベルがありません");
+    }
+
+    @Test
+    void wallsMatchExactNoiseWithinTolerance() {
+        for (int level = 0; level < Stubs.levelCount(); level++) {
+            LevelConfig config = Stubs.levelConfig(level);
+            LayoutOracle oracle = new LayoutOracle(config);
+            NoiseField field = oracle.noiseField;
+            int columns = 0;
+            int mismatches = 0;
+            for (int x = -RADIUS * 16; x < RADIUS * 16; x++) {
+                for (int z = -RADIUS * 16; z < RADIUS * 16; z++) {
+                    boolean exact = config.usesNoise
+                            ? LayoutOracle.wall(config, x, z, field.exact(x, z), field.exact(z, x))
+                            : LayoutOracle.wall(config, x, z, 0.0, 0.0);
+                    if (exact != oracle.isWall(x, z)) {
+                        mismatches++;
+                    }
+                    columns++;
+                }
+            }
+            if (!config.usesNoise) {
+                assertEquals(0, mismatches, "レベル" + level + ": ノイズを使わないレベルの壁が変わりました");
+            }
+            assertTrue(mismatches <= columns * WALL_TOLERANCE,
+                    "レベル" + level + ": 壁の判定が変わった列が多すぎます (" + mismatches + " / " + columns + ")");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package backroom.backroom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// players.dat のログが書いた状態をそのまま読み戻すこと
+// 書き込みの途中で止まった末尾は切り捨てて、それより前のレコードと以降の追記が読めること、圧縮で最新の状態が残ること
+class PlayerStoreTest {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 36;
+
+    private static final UUID ALICE = new UUID(1, 1);
+    private static final UUID BOB = new UUID(2, 2);
+    private static final UUID CAROL = new UUID(3, 3);
+
+    @TempDir
+    File dir;
+
+    @Test
+    void roundTrip() {
+        File file = new File(dir, "players.dat");
+        PlayerStore store = open(file);
+        store.capture(session(ALICE, 2, 42.5, 33.0));
+        store.capture(session(BOB, -1, 0.0, 100.0));
+        store.flush();
+        store.capture(session(ALICE, 1, 50.0, 20.0)); // 同じプレイヤーは後の状態が優先
+        store.close(); // 閉じるときの書き込み（同期しない）も読み戻せる
+
+        PlayerStore reopened = open(file);
+        assertState(reopened.take(ALICE), 1, 50.0, 20.0);
+        assertState(reopened.take(BOB), -1, 0.0, 100.0);
+        assertNull(reopened.take(CAROL));
+        reopened.close();
+        assertEquals(HEADER_SIZE + 3 * RECORD_SIZE, file.length());
+    }
+
+    @Test
+    void tornTailIsTruncatedAndLaterAppendsAreRead() throws IOException {
+        File file = new File(dir, "players.dat");
+        PlayerStore store = open(file);
+        store.capture(session(ALICE, 2, 42.5, 33.0));
+        store.capture(session(BOB, 0, 7.0, 80.0));
+        store.close();
+
+        // 3件目のレコードの途中で書き込みが止まった
+        Files.write(file.toPath(), new byte[RECORD_SIZE / 2], StandardOpenOption.APPEND);
+
+        PlayerStore reopened = open(file);
+        assertEquals(HEADER_SIZE + 2 * RECORD_SIZE, file.length(), "不完全なレコードが切り捨てられていません");
+        assertState(reopened.take(ALICE), 2, 42.5, 33.0);
+        assertState(reopened.take(BOB), 0, 7.0, 80.0);
+        reopened.capture(session(CAROL, 1, 3.0, 60.0));
+        reopened.close();
+
+        PlayerStore again = open(file);
+        assertState(again.take(ALICE), 2, 42.5, 33.0);
+        assertState(again.take(CAROL), 1, 3.0, 60.0);
+        again.close();
+    }
+
+    @Test
+    void compactionKeepsTheLatestState() {
+        File file = new File(dir, "players.dat");
+        PlayerStore store = open(file);
+        store.capture(session(BOB, 0, 1.0, 99.0));
+        store.flush();
+        for (int i = 0; i < 5000; i++) {
+            store.capture(session(ALICE, i % 3, i, 100.0 - i % 100));
+            store.flush();
+        }
+        store.close();
+        // 圧縮しなければ 5001 件が残る
+        assertTrue(file.length() < HEADER_SIZE + 1000L * RECORD_SIZE, "圧縮されていません (" + file.length() + " バイト)");
+
+        PlayerStore reopened = open(file);
+        assertState(reopened.take(ALICE), 4999 % 3, 4999, 100.0 - 4999 % 100);
+        assertState(reopened.take(BOB), 0, 1.0, 99.0);
+        reopened.close();
+    }
+
+    @Test
+    void unknownFileIsSetAside() throws IOException {
+        File file = new File(dir, "players.dat");
+        Files.write(file.toPath(), "not a player store".getBytes());
+
+        PlayerStore store = open(file);
+        assertTrue(new File(dir, "players.dat.bad").exists(), "知らない形式のファイルが残されていません");
+        assertNull(store.take(ALICE));
+        store.capture(session(ALICE, 1, 2.0, 3.0));
+        store.close();
+
+        PlayerStore reopened = open(file);
+        assertState(reopened.take(ALICE), 1, 2.0, 3.0);
+        reopened.close();
+    }
+
+    private static PlayerStore open(File file) {
+        PlayerStore store = new PlayerStore(null, file, Logger.getLogger("PlayerStoreTest"), Metrics.DISABLED);
+        store.loadIndex();
+        return store;
+    }
+
+    private static BackroomSession session(UUID playerId, int level, double distance, double sanity) {
+        BackroomSession session = new BackroomSession(playerId, 0);
+        session.stateLoaded = true;
+        session.level = level;
+        session.distanceTraveled = distance;
+        session.sanity = sanity;
+        return session;
+    }
+
+    private static void assertState(PlayerStore.State state, int level, double distance, double sanity) {
+        assertNotNull(state, "保存された状態がありません");
+        assertEquals(level, state.level);
+        assertEquals(distance, state.distance);
+        assertEquals(sanity, state.sanity);
+    }
+}
@@ -0,0 +1,159 @@
+package backroom.backroom;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 事前生成の渦巻きが正方形をちょうど1回ずつ埋めること、チェックポイントが未完了の位置を越えないこと、
+// チェックポイントから再開すると同じ渦巻きの続きから依頼すること
+// ワールドは依頼されたチャンクを記録するだけで、完了はテストが任意の順で返す
+class PregenTaskTest {
+
+    private static final int RADIUS = 100; // 半径 7 チャンク = 15×15 チャンク
+    private static final int HALF = (RADIUS + 15) >> 4;
+    private static final int TOTAL = (2 * HALF + 1) * (2 * HALF + 1);
+    private static final int MAX_IN_FLIGHT = 8;
+
+    @TempDir
+    File dir;
+
+    // 依頼された順のチャンク座標と、まだ返していない読み込み
+    private static final class Requests {
+        final List<Long> chunks = new ArrayList<>();
+        final List<CompletableFuture<Chunk>> futures = new ArrayList<>();
+    }
+
+    @BeforeAll
+    static void installServer() {
+        Stubs.installServer(); // MSPT は 0 として読まれる
+    }
+
+    @Test
+    void spiralCoversTheSquareOnceAndCheckpointWaitsForGaps() {
+        Requests requests = new Requests();
+        PregenTask task = task(requests, 0, new File(dir, "pregen.yml"));
+        Random random = new Random(1);
+        Set<Long> completed = new HashSet<>();
+
+        while (task.checkpoint() < TOTAL) {
+            task.tick();
+            // 依頼中のものを任意の順で半分ずつ返す（後の位置が先に終わる）
+            List<Integer> open = new ArrayList<>();
+            for (int i = 0; i < requests.futures.size(); i++) {
+                if (!requests.futures.get(i).isDone()) {
+                    open.add(i);
+                }
+            }
+            Collections.shuffle(open, random);
+            for (int i : open.subList(0, Math.max(1, open.size() / 2))) {
+                requests.futures.get(i).complete(null);
+                completed.add((long) i);
+            }
+            int leading = 0;
+            while (completed.contains((long) leading)) {
+                leading++;
+            }
+            assertEquals(leading, task.checkpoint(), "チェックポイントが未完了の位置を越えたか、完了に追いついていません");
+        }
+
+        assertEquals(TOTAL, requests.chunks.size(), "依頼したチャンクの数");
+        assertEquals(TOTAL, new HashSet<>(requests.chunks).size(), "同じチャンクを2回依頼しました");
+        for (long key : requests.chunks) {
+            int x = FlickerEngine.cellX(key);
+            int z = FlickerEngine.cellZ(key);
+            assertTrue(Math.abs(x) <= HALF && Math.abs(z) <= HALF, "正方形の外のチャンク (" + x + ", " + z + ")");
+        }
+        assertEquals(0L, requests.chunks.get(0), "渦巻きは原点から始まる");
+        task.tick(); // 完了に追いついた次のティックで終わる
+        assertFalse(task.isRunning(), "すべて終わったら止まる");
+    }
+
+    @Test
+    void resumeContinuesTheSameSpiral() {
+        List<Long> order = fullOrder(new File(dir, "full.yml"));
+        for (int from : new int[]{1, 2, 9, 10, 48, TOTAL - 1}) {
+            Requests requests = new Requests();
+            List<Long> rest = run(task(requests, from, new File(dir, "resume" + from + ".yml")), requests);
+            assertEquals(order.subList(from, TOTAL), rest, from + " 番目からの再開");
+        }
+    }
+
+    @Test
+    void checkpointFileRoundTrip() {
+        File file = new File(dir, "pregen.yml");
+        Requests requests = new Requests();
+        PregenTask task = task(requests, 0, file);
+        task.tick();
+        // 先頭の3つと5番目だけを完了させる（チェックポイントは 3）
+        for (int i : new int[]{0, 1, 2, 4}) {
+            requests.futures.get(i).complete(null);
+        }
+        assertEquals(3, task.checkpoint());
+        task.pause(); // チェックポイントを保存する
+
+        BackroomLevel level = new BackroomLevel(Stubs.levelConfig(0), List.of());
+        Requests resumed = new Requests();
+        level.world = world(resumed);
+        PregenTask restored = PregenTask.resume(plugin(), file, new BackroomLevel[]{level}, MAX_IN_FLIGHT, 50.0);
+        assertNotNull(restored, "チェックポイントから再開できません");
+        assertEquals(3, restored.checkpoint());
+        assertEquals(RADIUS, restored.radius);
+        restored.resume(); // 一時停止のまま保存されている
+        restored.tick();
+        List<Long> order = fullOrder(new File(dir, "full.yml"));
+        assertEquals(order.subList(3, 3 + MAX_IN_FLIGHT), resumed.chunks, "再開後の最初の依頼");
+    }
+
+    // 最初から最後まで進めたときの依頼の順
+    private static List<Long> fullOrder(File file) {
+        Requests requests = new Requests();
+        return run(task(requests, 0, file), requests);
+    }
+
+    // 依頼をすぐに完了させて最後まで進め、依頼した順を返す
+    private static List<Long> run(PregenTask task, Requests requests) {
+        while (task.isRunning()) {
+            task.tick();
+            for (CompletableFuture<Chunk> future : requests.futures) {
+                future.complete(null);
+            }
+        }
+        return requests.chunks;
+    }
+
+    private static PregenTask task(Requests requests, long resumeFrom, File file) {
+        return new PregenTask(plugin(), file, world(requests), 0, RADIUS, MAX_IN_FLIGHT, 50.0, resumeFrom, false);
+    }
+
+    private static World world(Requests requests) {
+        return Stubs.stub(World.class, Map.of("getChunkAtAsync", args -> {
+            requests.chunks.add(FlickerEngine.cellKey((int) args[0], (int) args[1]));
+            CompletableFuture<Chunk> future = new CompletableFuture<>();
+            requests.futures.add(future);
+            return future;
+        }));
+    }
+
+    private static Plugin plugin() {
+        return Stubs.stub(Plugin.class, Map.of("getLogger", args -> Logger.getLogger("PregenTaskTest")));
+    }
+}
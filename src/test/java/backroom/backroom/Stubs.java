@@ -0,0 +1,114 @@
+package backroom.backroom;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+// テストとベンチマーク用の Bukkit の代役（サーバーなしで動かす）
+// World や Player はメソッドが多すぎるので動的プロキシで作り、使うメソッドだけに答える
+// プロキシの呼び出しは引数の配列を割り当てるので、その分は ProxyBaselineBenchmark で差し引いて読む
+final class Stubs {
+
+    // 同梱の config.yml のレベルの定義（実行時のクラスパスにある main のリソースから読む）
+    private static final LevelProfile[] PROFILES = loadProfiles();
+
+    private Stubs() {
+    }
+
+    private static LevelProfile[] loadProfiles() {
+        InputStream resource = Stubs.class.getResourceAsStream("/config.yml");
+        if (resource == null) {
+            throw new IllegalStateException("config.yml がクラスパスにありません");
+        }
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(
+                new InputStreamReader(resource, StandardCharsets.UTF_8));
+        return LevelProfile.loadAll(yaml.getConfigurationSection("levels"), yaml.getInt("max_levels"),
+                Logger.getLogger("Stubs"));
+    }
+
+    // 同梱の config.yml に定義されたレベルの数
+    static int levelCount() {
+        return PROFILES.length;
+    }
+
+    // config.yml の既定値でのレベル設定
+    static LevelConfig levelConfig(int level) {
+        return new LevelConfig(level, PROFILES[level], 5, 4, 0.002, PROFILES.length);
+    }
+
+    // answers に無いメソッドは既定値（0・false・null）を返す
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return (char) 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    // Bukkit の静的メソッド（isOwnedByCurrentRegion など）が使うサーバーを差し込む
+    // Bukkit.setServer はビルド情報を読むのでサーバーの実装が無いと失敗する。フィールドに直接入れる
+    static synchronized void installServer() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+        Server server = stub(Server.class, Map.of(
+                "isOwnedByCurrentRegion", args -> true,
+                "isPrimaryThread", args -> true));
+        try {
+            Field field = Bukkit.class.getDeclaredField("server");
+            field.setAccessible(true);
+            field.set(null, server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Bukkit のサーバーを差し込めません", e);
+        }
+    }
+}